@@ -0,0 +1,137 @@
+
+/**
+ * @author Kevin Wong
+ * Index of the most recently active users, ordered by the time of their last
+ * tweet. Every UserGroup keeps one for its subtree, and User.postTweet keeps
+ * them up to date, so "most recent poster" and "top K most recently active"
+ * are answered in O(log n) instead of walking the tree.
+ *
+ * An index only remembers its capacity most recent users, DEFAULT_CAPACITY
+ * unless chosen otherwise, so topK() never returns more than that. Older
+ * activity is forgotten, not lost: a user that posts again is back on top.
+ */
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+public class ActivityIndex {
+    // default number of users remembered by each index
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private TreeSet<Entry> byRecency;
+    private HashMap<User, Entry> entries;
+    private int capacity;
+    private long sequence = 0;
+
+    /**
+     * Constructor for an index holding DEFAULT_CAPACITY users
+     */
+    public ActivityIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity: maximum number of users to remember. Since activity times
+     *                  only move forward, the least recent user can be evicted
+     *                  without ever affecting a top K query for K <= capacity.
+     */
+    public ActivityIndex(int capacity) {
+        this.capacity = capacity;
+        byRecency = new TreeSet<Entry>(new RecencyComparator());
+        entries = new HashMap<User, Entry>();
+    }
+
+    /**
+     * Records that user was active at the given time. Posts racing each other
+     * may arrive out of order, so an older time never replaces a newer one.
+     *
+     * @param user: the User that posted
+     * @param time: time of the post
+     */
+    public synchronized void record(User user, long time) {
+        Entry old = entries.get(user);
+        if (old != null) {
+            if (old.time > time) {
+                return;
+            }
+            entries.remove(user);
+            byRecency.remove(old);
+        }
+        Entry e = new Entry(user, time, sequence++);
+        byRecency.add(e);
+        entries.put(user, e);
+        if (byRecency.size() > capacity) {
+            entries.remove(byRecency.pollLast().user);
+        }
+    }
+
+    /**
+     * @return the most recently active user, or null if no one has posted
+     */
+    public synchronized User mostRecent() {
+        if (byRecency.isEmpty()) {
+            return null;
+        }
+        return byRecency.first().user;
+    }
+
+    /**
+     * @param k: number of users to return
+     * @return up to k users, most recently active first
+     */
+    public synchronized List<User> topK(int k) {
+        ArrayList<User> result = new ArrayList<User>(Math.min(k, byRecency.size()));
+        Iterator<Entry> i = byRecency.iterator();
+        while (i.hasNext() && result.size() < k) {
+            result.add(i.next().user);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of users currently held by this index
+     */
+    public synchronized int size() {
+        return byRecency.size();
+    }
+
+    /**
+     * @return maximum number of users this index remembers
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Snapshot of a user's activity at the time it was recorded
+     */
+    private static class Entry {
+        private User user;
+        private long time;
+        private long seq;
+
+        private Entry(User user, long time, long seq) {
+            this.user = user;
+            this.time = time;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Orders entries newest first. Posts within the same millisecond are
+     * ordered by when they were recorded.
+     */
+    private static class RecencyComparator implements Comparator<Entry> {
+        public int compare(Entry a, Entry b) {
+            if (a.time != b.time) {
+                return Long.compare(b.time, a.time);
+            }
+            return Long.compare(b.seq, a.seq);
+        }
+    }
+}
\ No newline at end of file
@@ -17,10 +17,14 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 public class AdminControlPanel {
     private static AdminControlPanel pointer;
-    private DefaultMutableTreeNode currentNodeSelection;
+    private SysEntry currentNodeSelection;
     private UserTree userTree;
 
     /**
@@ -38,6 +42,28 @@ public class AdminControlPanel {
      */
     private AdminControlPanel() {
         userTree = new UserTree();
+        // -Dminitwitter.cdc.dir=<dir> exports every change as NDJSON, and
+        // -Dminitwitter.cdc.overflow=BLOCK|DROP|SPILL picks what happens when
+        // the exporter falls behind
+        String cdcDir = System.getProperty("minitwitter.cdc.dir");
+        if (cdcDir != null) {
+            File dir = new File(cdcDir);
+            ChangePublisher.OverflowPolicy policy = ChangePublisher.OverflowPolicy
+                    .valueOf(System.getProperty("minitwitter.cdc.overflow", "SPILL"));
+            ChangePublisher cdc = new ChangePublisher(8192, 256, policy,
+                    new NdjsonFileSink(dir, "spill", 64L << 20));
+            cdc.addSink(new NdjsonFileSink(dir, "changes", 64L << 20));
+            userTree.addTreeListener(cdc);
+            // closing the window exits the JVM, write out what is still in
+            // the ring first
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cdc.close();
+                } catch (IOException | InterruptedException e) {
+                    Log.warn("cdc.close.failed", "error", e.getMessage());
+                }
+            }, "cdc-close"));
+        }
         userTree.fillWithDummyData();
         userTree.getRoot();
     }
@@ -51,7 +77,7 @@ public class AdminControlPanel {
         // set up admin frame
         JFrame adminFrame = new JFrame("Admin Control Panel");
         adminFrame.setResizable(false);
-        adminFrame.setBounds(100, 100, 540, 423);
+        adminFrame.setBounds(100, 100, 540, 543);
         adminFrame.getContentPane().setLayout(null);
         adminFrame.addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent windowEvent) {
@@ -61,14 +87,14 @@ public class AdminControlPanel {
 
         // set up message center
         JTextArea messageCenter = new JTextArea();
-        messageCenter.setBounds(10, 360, 510, 20);
+        messageCenter.setBounds(10, 480, 510, 20);
         adminFrame.getContentPane().add(messageCenter);
         messageCenter.setEditable(false);
         adminFrame.getContentPane().add(messageCenter);
 
         // set up tree panel
         JScrollPane scrollPane = new JScrollPane();
-        scrollPane.setBounds(10, 11, 265, 343);
+        scrollPane.setBounds(10, 11, 265, 463);
         adminFrame.getContentPane().add(scrollPane);
 
         JLabel lblNewLabel = new JLabel("  Users");
@@ -76,21 +102,29 @@ public class AdminControlPanel {
 
         JTree tree = userTree.getJTree();
         scrollPane.setViewportView(tree);
-        for (int i = 0; i < tree.getRowCount(); i++) {
-            tree.expandRow(i);
-        }
+        // only the root is expanded up front, groups load their children on expand
+        tree.expandRow(0);
         tree.setCellRenderer(new customTreeRenderer());
         tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
         tree.addTreeSelectionListener(new TreeSelectionListener() {
             public void valueChanged(TreeSelectionEvent e) {
-                DefaultMutableTreeNode current = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-                if (current != null) {
+                SysEntry current = (SysEntry) tree.getLastSelectedPathComponent();
+                if (current instanceof UserGroup) {
+                    currentNodeSelection = current;
+                    UserGroup group = (UserGroup) current;
+                    messageCenter.setText(group + ": " + group.getNumUsers() + " users, "
+                            + group.getNumGroups() + " groups, " + group.getNumTweets() + " tweets ("
+                            + group.getNumPosTweets() + " positive), reach ~"
+                            + userTree.getReach(group));
+                } else if (current != null) {
                     currentNodeSelection = current;
+                    messageCenter.setText("Estimated reach of " + current + ": "
+                            + userTree.getReach(current) + " users");
+                } else {
+                    messageCenter.setText("");
                 }
-                messageCenter.setText("");
             }
         });
-        DefaultTreeModel model = (DefaultTreeModel) tree.getModel();
 
         // Set up buttons
         JPanel buttonPanel = new JPanel();
@@ -106,25 +140,24 @@ public class AdminControlPanel {
         addUser.setBounds(126, 10, 110, 23);
         addUser.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                DefaultMutableTreeNode result;
+                User result;
                 if (userArea.getText().equals("")) {
                     messageCenter.setText("Invalid Username!");
                     return;
                 }
-                if (currentNodeSelection != null &&
-                        currentNodeSelection.getUserObject() instanceof UserGroup) {
-                    result = userTree.addUser(userArea.getText(), currentNodeSelection);
+                if (currentNodeSelection instanceof UserGroup) {
+                    result = userTree.addUser(userArea.getText(), (UserGroup) currentNodeSelection);
                 } else {
                     result = userTree.addUser(userArea.getText());
                 }
                 if (result != null) {
-                    model.reload();
+                    tree.expandPath(userTree.getModel().pathTo(result.getGroup()));
                     messageCenter.setText("User successfully added!");
                 } else {
-                    messageCenter.setText("User already exists!");
+                    messageCenter.setText("ID already in use!");
                 }
                 userArea.setText("");
-                currentNodeSelection = (DefaultMutableTreeNode) model.getRoot();
+                currentNodeSelection = userTree.getRoot();
             }
         });
         buttonPanel.add(addUser);
@@ -137,25 +170,24 @@ public class AdminControlPanel {
         addGroup.setBounds(126, 38, 110, 23);
         addGroup.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                DefaultMutableTreeNode result;
+                UserGroup result;
                 if (groupArea.getText().equals("")) {
                     messageCenter.setText("Invalid group name!");
                     return;
                 }
-                if (currentNodeSelection != null &&
-                        currentNodeSelection.getUserObject() instanceof UserGroup) {
-                    result = userTree.addGroup(groupArea.getText(), currentNodeSelection);
+                if (currentNodeSelection instanceof UserGroup) {
+                    result = userTree.addGroup(groupArea.getText(), (UserGroup) currentNodeSelection);
                 } else {
                     result = userTree.addGroup(groupArea.getText());
                 }
                 if (result != null) {
-                    model.reload();
+                    tree.expandPath(userTree.getModel().pathTo(result.getParent()));
                     messageCenter.setText("Group successfully added!");
                 } else {
-                    messageCenter.setText("Group already exists!");
+                    messageCenter.setText("ID already in use!");
                 }
                 groupArea.setText("");
-                currentNodeSelection = (DefaultMutableTreeNode) model.getRoot();
+                currentNodeSelection = userTree.getRoot();
             }
         });
         buttonPanel.add(addGroup);
@@ -164,9 +196,8 @@ public class AdminControlPanel {
         openUser.setBounds(292, 91, 226, 23);
         openUser.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                if (currentNodeSelection != null && currentNodeSelection.toString() != null &&
-                        currentNodeSelection.getUserObject() instanceof User) {
-                    new UserView(currentNodeSelection, userTree);
+                if (currentNodeSelection instanceof User) {
+                    new UserView((User) currentNodeSelection, userTree);
                 } else {
                     messageCenter.setText("Please select a user.");
                 }
@@ -174,6 +205,48 @@ public class AdminControlPanel {
         });
         adminFrame.getContentPane().add(openUser);
 
+        // set up tweet search, scoped to the selected user or group
+        JTextArea searchArea = new JTextArea(1, 10);
+        searchArea.setBounds(292, 126, 106, 20);
+        adminFrame.getContentPane().add(searchArea);
+
+        JButton search = new JButton("Search Tweets");
+        search.setBounds(408, 125, 110, 23);
+        search.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String query = searchArea.getText().trim();
+                if (query.equals("")) {
+                    messageCenter.setText("Enter words to search for.");
+                    return;
+                }
+                User author = null;
+                UserGroup group = null;
+                if (currentNodeSelection instanceof User) {
+                    author = (User) currentNodeSelection;
+                } else if (currentNodeSelection instanceof UserGroup) {
+                    group = (UserGroup) currentNodeSelection;
+                }
+                // a query in double quotes is matched as an exact phrase
+                List<TweetIndex.Hit> hits;
+                if (query.length() > 1 && query.startsWith("\"") && query.endsWith("\"")) {
+                    hits = userTree.getTweetIndex().searchPhrase(query.substring(1, query.length() - 1),
+                            author, group, 100);
+                } else {
+                    hits = userTree.getTweetIndex().search(query, author, group, 100);
+                }
+                DefaultListModel<String> results = new DefaultListModel<String>();
+                for (TweetIndex.Hit hit : hits) {
+                    results.addElement(" - " + hit);
+                }
+                JDialog d = new JDialog(adminFrame, "Search: " + query);
+                d.setBounds(150, 150, 360, 240);
+                d.getContentPane().add(new JScrollPane(new JList<String>(results)));
+                d.setVisible(true);
+                messageCenter.setText(hits.size() + " matching tweets.");
+            }
+        });
+        adminFrame.getContentPane().add(search);
+
         // set up visitor controlled buttons
         JButton idVerify = new JButton("Validate IDs");
         idVerify.addActionListener(new ActionListener() {
@@ -193,7 +266,7 @@ public class AdminControlPanel {
         adminFrame.getContentPane().add(panel0);
 
         JButton numUsers = dialogButton(adminFrame, "Total Number of Users",
-                "Number of users: ", new NumUsers(userTree));
+                "Number of users: ", userTree.cached(new NumUsers(userTree)));
         JPanel panel1 = new JPanel();
         panel1.setBounds(285, 201, 243, 33);
         panel1.setLayout(null);
@@ -201,7 +274,7 @@ public class AdminControlPanel {
         adminFrame.getContentPane().add(panel1);
 
         JButton numGroups = dialogButton(adminFrame, "Total Number of Groups",
-                "Number of groups: ", new NumGroups(userTree));
+                "Number of groups: ", userTree.cached(new NumGroups(userTree)));
         JPanel panel2 = new JPanel();
         panel2.setBounds(285, 231, 243, 33);
         panel2.setLayout(null);
@@ -209,7 +282,7 @@ public class AdminControlPanel {
         adminFrame.getContentPane().add(panel2);
 
         JButton numTweets = dialogButton(adminFrame, "Total Number of Tweets",
-                "Number of Tweets: ", new NumTweets(userTree));
+                "Number of Tweets: ", userTree.cached(new NumTweets(userTree)));
         JPanel panel3 = new JPanel();
         panel3.setBounds(285, 261, 243, 33);
         panel3.setLayout(null);
@@ -217,7 +290,7 @@ public class AdminControlPanel {
         adminFrame.getContentPane().add(panel3);
 
         JButton percentPos = dialogButton(adminFrame, "Positive Percentage of Tweets",
-                "Percentage of Tweets that are positive: ", new PercentPosTweets(userTree));
+                "Percentage of Tweets that are positive: ", userTree.cached(new PercentPosTweets(userTree)));
         JPanel panel4 = new JPanel();
         panel4.setBounds(285, 291, 243, 33);
         panel4.setLayout(null);
@@ -229,8 +302,16 @@ public class AdminControlPanel {
             public void actionPerformed(ActionEvent e) {
                 JDialog d = new JDialog(adminFrame, "Most Recent User");
                 JLabel l = new JLabel("The most recent user to post: " + userTree.mostRecent());
+                // scope the recently active list to the selected group, if any
+                UserGroup scope = userTree.getRoot();
+                if (currentNodeSelection instanceof UserGroup) {
+                    scope = (UserGroup) currentNodeSelection;
+                }
+                JLabel recent = new JLabel("Recently active in " + scope + ": "
+                        + userTree.mostRecent(5, scope));
                 d.getContentPane().setLayout(new FlowLayout());
                 d.getContentPane().add(l);
+                d.getContentPane().add(recent);
                 d.setVisible(true);
             }
         });
@@ -241,10 +322,196 @@ public class AdminControlPanel {
         panel5.add(mostRecent);
         adminFrame.getContentPane().add(panel5);
 
+        JButton trending = new JButton("Trending");
+        trending.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                // scope trends to the selected group, if any
+                UserGroup scope = userTree.getRoot();
+                if (currentNodeSelection instanceof UserGroup) {
+                    scope = (UserGroup) currentNodeSelection;
+                }
+                long now = System.currentTimeMillis();
+                DefaultListModel<String> lines = new DefaultListModel<String>();
+                String[] labels = { "Last minute", "Last hour", "Last day" };
+                TrendTracker.Window[] windows = TrendTracker.Window.values();
+                for (int i = 0; i < windows.length; i++) {
+                    lines.addElement(labels[i] + ":");
+                    for (Map.Entry<String, Long> tag : scope.getTrends().top(windows[i], 10, now)) {
+                        lines.addElement("    " + tag.getKey() + " (" + tag.getValue() + ")");
+                    }
+                }
+                JDialog d = new JDialog(adminFrame, "Trending in " + scope);
+                d.setBounds(150, 150, 300, 300);
+                d.getContentPane().add(new JScrollPane(new JList<String>(lines)));
+                d.setVisible(true);
+            }
+        });
+        trending.setBounds(10, 5, 223, 23);
+        JPanel panel6 = new JPanel();
+        panel6.setBounds(285, 351, 243, 33);
+        panel6.setLayout(null);
+        panel6.add(trending);
+        adminFrame.getContentPane().add(panel6);
+
+        JButton dashboard = new JButton("Live Dashboard");
+        dashboard.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                launchDashboard(adminFrame);
+            }
+        });
+        dashboard.setBounds(10, 5, 223, 23);
+        JPanel panel7 = new JPanel();
+        panel7.setBounds(285, 381, 243, 33);
+        panel7.setLayout(null);
+        panel7.add(dashboard);
+        adminFrame.getContentPane().add(panel7);
+
+        // set up group broadcasts, sent to the selected group or everyone
+        JTextArea broadcastArea = new JTextArea(1, 10);
+        broadcastArea.setBounds(10, 6, 106, 20);
+        JButton broadcast = new JButton("Broadcast");
+        broadcast.setBounds(126, 5, 107, 23);
+        broadcast.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String message = broadcastArea.getText();
+                if (message.equals("")) {
+                    messageCenter.setText("Enter a message to broadcast.");
+                    return;
+                }
+                UserGroup scope = userTree.getRoot();
+                if (currentNodeSelection instanceof UserGroup) {
+                    scope = (UserGroup) currentNodeSelection;
+                }
+                messageCenter.setText("Broadcasting to " + scope + "...");
+                userTree.broadcast(scope, message, new GroupBroadcaster.Progress() {
+                    public void delivered(GroupBroadcaster.Broadcast b, int delivered) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                messageCenter.setText("Broadcasting to " + b.getGroup() + ": " + delivered
+                                        + " of " + b.getTotal() + " users");
+                            }
+                        });
+                    }
+
+                    public void completed(GroupBroadcaster.Broadcast b) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            public void run() {
+                                messageCenter.setText("Broadcast delivered to " + b.getDelivered()
+                                        + " users in " + b.getGroup() + ".");
+                            }
+                        });
+                    }
+                });
+                broadcastArea.setText("");
+            }
+        });
+        JPanel panel8 = new JPanel();
+        panel8.setBounds(285, 411, 243, 33);
+        panel8.setLayout(null);
+        panel8.add(broadcastArea);
+        panel8.add(broadcast);
+        adminFrame.getContentPane().add(panel8);
+
+        JButton memory = new JButton("Memory Usage");
+        memory.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                // scope the report to the selected group, if any
+                UserGroup scope = userTree.getRoot();
+                if (currentNodeSelection instanceof UserGroup) {
+                    scope = (UserGroup) currentNodeSelection;
+                }
+                DefaultListModel<String> lines = new DefaultListModel<String>();
+                lines.addElement("Total: " + MemoryMeter.format(scope.getRetainedBytes()));
+                lines.addElement("Largest users:");
+                for (SysEntry entry : userTree.largestConsumers(10, scope, false)) {
+                    lines.addElement("    " + entry + " (" + MemoryMeter.format(entry.getRetainedBytes()) + ")");
+                }
+                lines.addElement("Largest groups:");
+                for (SysEntry entry : userTree.largestConsumers(10, scope, true)) {
+                    lines.addElement("    " + entry + " (" + MemoryMeter.format(entry.getRetainedBytes()) + ")");
+                }
+                // tweet text lives off-heap, shared by the whole tree
+                TweetArena arena = userTree.getTweetArena();
+                lines.addElement("Tweet text (whole tree): " + MemoryMeter.format(arena.getLiveBytes()) + " live of "
+                        + MemoryMeter.format(arena.getReservedBytes()) + " reserved off-heap");
+                JDialog d = new JDialog(adminFrame, "Memory Usage of " + scope);
+                d.setBounds(150, 150, 300, 300);
+                d.getContentPane().add(new JScrollPane(new JList<String>(lines)));
+                d.setVisible(true);
+            }
+        });
+        memory.setBounds(10, 5, 223, 23);
+        JPanel panel9 = new JPanel();
+        panel9.setBounds(285, 441, 243, 33);
+        panel9.setLayout(null);
+        panel9.add(memory);
+        adminFrame.getContentPane().add(panel9);
+
         adminFrame.setVisible(true);
 
     }
 
+    /**
+     * Opens a dialog charting the number of users, tweets per second and
+     * positive percentage over time. The statistics are sampled in the
+     * background and the charts repaint after each sample, so the UI never
+     * waits on a traversal. Sampling stops when the dialog is closed.
+     * 
+     * @param owner: the JFrame which to associate the dialog
+     */
+    private void launchDashboard(JFrame owner) {
+        JDialog d = new JDialog(owner, "Live Dashboard");
+        d.setBounds(150, 150, 336, 350);
+        d.setResizable(false);
+        d.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        d.getContentPane().setLayout(null);
+
+        JLabel skipped = new JLabel();
+        skipped.setBounds(170, 280, 140, 20);
+        d.getContentPane().add(skipped);
+
+        StatsSampler sampler = new StatsSampler(userTree);
+        Sparkline[] lines = { new Sparkline("Users", sampler.getUsers()),
+                new Sparkline("Tweets/sec", sampler.getTweetRate()),
+                new Sparkline("Positive %", sampler.getPositivePercent()) };
+        for (int i = 0; i < lines.length; i++) {
+            lines[i].setBounds(10, 10 + i * 90, 300, 80);
+            d.getContentPane().add(lines[i]);
+        }
+        // repaint on the event dispatch thread once a sample is ready
+        sampler.setOnSample(new Runnable() {
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        for (Sparkline line : lines) {
+                            line.repaint();
+                        }
+                        skipped.setText("Skipped samples: " + sampler.getSkipped());
+                    }
+                });
+            }
+        });
+
+        String[] intervals = { "1 second", "2 seconds", "5 seconds", "10 seconds" };
+        long[] millis = { 1000, 2000, 5000, 10000 };
+        JComboBox<String> interval = new JComboBox<String>(intervals);
+        interval.setBounds(10, 280, 150, 20);
+        interval.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                sampler.start(millis[interval.getSelectedIndex()]);
+            }
+        });
+        d.getContentPane().add(interval);
+
+        d.addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                sampler.stop();
+            }
+        });
+        sampler.start(millis[0]);
+        d.setVisible(true);
+    }
+
     /**
      * Button generator function: creates a button which, when clicked, launches a
      * dialog
@@ -283,12 +550,9 @@ public class AdminControlPanel {
         public Component getTreeCellRendererComponent(JTree tree, Object value, boolean sel,
                 boolean expanded, boolean leaf, int row, boolean hasFocus) {
             super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
-            if (value instanceof DefaultMutableTreeNode) {
-                DefaultMutableTreeNode node = (DefaultMutableTreeNode) value;
-                if (node.getUserObject() instanceof UserGroup) {
-                    // object is a valid group
-                    setIcon(UIManager.getIcon("FileView.directoryIcon"));
-                }
+            if (value instanceof UserGroup) {
+                // object is a valid group
+                setIcon(UIManager.getIcon("FileView.directoryIcon"));
             }
             return this;
         }
@@ -0,0 +1,27 @@
+
+/**
+ * @author Kevin Wong
+ * Writes ChangeEvents in the compact binary form of ChangeEvent.writeTo(),
+ * one record after another, into rotating files
+ */
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+public class BinaryFileSink extends RotatingFileSink {
+    /**
+     * Constructor
+     *
+     * @param dir:      directory to write into
+     * @param prefix:   start of every file name
+     * @param maxBytes: size at which a new file is started
+     */
+    public BinaryFileSink(File dir, String prefix, long maxBytes) {
+        super(dir, prefix, "bin", maxBytes);
+    }
+
+    @Override
+    protected void encode(ChangeEvent event, DataOutputStream out) throws IOException {
+        event.writeTo(out);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+
+/**
+ * @author Kevin Wong
+ *         StatType decorator that remembers the last value it computed along
+ *         with the tree's epoch at the time. While no mutation has finished
+ *         since, the value is returned as is, so many callers polling a
+ *         traversing statistic pay for one traversal between changes.
+ *         Instances obtained from UserTree.cached() are shared by every caller
+ *         of that tree.
+ */
+public class CachedStat implements StatType {
+
+    private StatType stat;
+    private UserTree tree;
+    private long epoch = -1;
+    private long value;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructor
+     * 
+     * @param stat: statistic to compute on a miss
+     * @param tree: tree whose epoch decides when the value is stale
+     */
+    public CachedStat(StatType stat, UserTree tree) {
+        this.stat = stat;
+        this.tree = tree;
+    }
+
+    /**
+     * Recomputes only when the epoch has moved. The epoch is read before
+     * computing, so a mutation finishing during the computation leaves the
+     * stored value stale and the next call recomputes it.
+     * 
+     * @return value of the wrapped statistic
+     */
+    public synchronized long getData() {
+        long current = tree.getEpoch();
+        if (current == epoch) {
+            hits++;
+            return value;
+        }
+        misses++;
+        value = stat.getData();
+        epoch = current;
+        return value;
+    }
+
+    /**
+     * @return number of calls answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of calls that computed the statistic
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the wrapped statistic
+     */
+    public StatType getStat() {
+        return stat;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+
+/**
+ * @author Kevin Wong
+ * One change to a UserTree, as published by ChangePublisher. Events are
+ * numbered in the order they were published so consumers can restore that
+ * order, even for events spilled to a separate sink.
+ */
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class ChangeEvent {
+    /**
+     * Kinds of change. Fields not listed for a type are left null or 0.
+     */
+    public enum Type {
+        // subject: new user, target: its group
+        USER_CREATED,
+        // subject: new group, target: its parent group
+        GROUP_CREATED,
+        // subject: follower, target: followee
+        FOLLOWED,
+        // subject: author, tweetId and text
+        TWEET_POSTED,
+        // subject: author, tweetId
+        TWEET_DELETED
+    }
+
+    private long sequence;
+    private Type type;
+    private long time;
+    private String subject;
+    private String target;
+    private long tweetId;
+    private String text;
+
+    /**
+     * Constructor
+     *
+     * @param sequence: position of this event among all published events
+     * @param type:     kind of change
+     * @param time:     time of the change in milliseconds since 1970
+     * @param subject:  id of the user or group that changed
+     * @param target:   id of the other user or group involved, or null
+     * @param tweetId:  id of the tweet involved, or 0
+     * @param text:     text of the tweet involved, or null
+     */
+    public ChangeEvent(long sequence, Type type, long time, String subject, String target, long tweetId,
+            String text) {
+        this.sequence = sequence;
+        this.type = type;
+        this.time = time;
+        this.subject = subject;
+        this.target = target;
+        this.tweetId = tweetId;
+        this.text = text;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public long getTweetId() {
+        return tweetId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return this event as a single line JSON object, without the newline
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(96);
+        json.append("{\"seq\":").append(sequence);
+        json.append(",\"type\":\"").append(type).append('"');
+        json.append(",\"time\":").append(time);
+        appendField(json, "subject", subject);
+        appendField(json, "target", target);
+        if (tweetId != 0) {
+            json.append(",\"tweetId\":").append(tweetId);
+        }
+        appendField(json, "text", text);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Writes this event as: sequence, type ordinal as a byte, time, subject,
+     * target, tweet id and text. Each string is an int byte count followed by
+     * its UTF-8 bytes, with null strings written as empty. Unlike writeUTF()
+     * this has no 64 KB limit, so a long tweet cannot fail the write.
+     *
+     * @param out: stream to write to
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(sequence);
+        out.writeByte(type.ordinal());
+        out.writeLong(time);
+        writeString(out, subject);
+        writeString(out, target);
+        out.writeLong(tweetId);
+        writeString(out, text);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void appendField(StringBuilder json, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        json.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c == '\n') {
+                json.append("\\n");
+            } else if (c == '\r') {
+                json.append("\\r");
+            } else if (c == '\t') {
+                json.append("\\t");
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
\ No newline at end of file
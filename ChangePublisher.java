@@ -0,0 +1,238 @@
+
+/**
+ * @author Kevin Wong
+ * Change data capture for a UserTree. Registered as a TreeListener, it turns
+ * every user created, group created, follow, tweet posted and tweet deleted
+ * into a ChangeEvent and hands it to a fixed size ring buffer. A single
+ * background thread takes events off the ring in batches and writes each
+ * batch to every sink, so the threads making changes never wait on disk.
+ *
+ * Memory is bounded by the ring. When it is full the overflow policy decides:
+ * BLOCK makes the changing thread wait for room, DROP discards the event and
+ * counts it, and SPILL writes it straight to a separate spill sink. Spilled
+ * events can arrive before earlier events still in the ring, consumers use
+ * the sequence numbers to restore the order.
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ChangePublisher implements TreeListener {
+    /**
+     * What to do with an event when the ring is full
+     */
+    public enum OverflowPolicy {
+        BLOCK, DROP, SPILL
+    }
+
+    private CopyOnWriteArrayList<EventSink> sinks;
+    private EventSink spillSink;
+    private OverflowPolicy policy;
+    private int batchSize;
+    private ChangeEvent[] ring;
+    private int head = 0;
+    private int size = 0;
+    private long nextSequence = 0;
+    private long published = 0;
+    private long dropped = 0;
+    private long spilled = 0;
+    private long failedBatches = 0;
+    private boolean closed = false;
+    private Thread writer;
+
+    /**
+     * Constructor
+     *
+     * @param capacity:  most events held in memory
+     * @param batchSize: most events written to the sinks at once
+     * @param policy:    what to do when the ring is full
+     * @param spillSink: sink for overflowing events under SPILL, may be null
+     *                   for the other policies
+     */
+    public ChangePublisher(int capacity, int batchSize, OverflowPolicy policy, EventSink spillSink) {
+        if (policy == OverflowPolicy.SPILL && spillSink == null) {
+            throw new IllegalArgumentException("SPILL needs a spill sink");
+        }
+        this.ring = new ChangeEvent[capacity];
+        this.batchSize = batchSize;
+        this.policy = policy;
+        this.spillSink = spillSink;
+        sinks = new CopyOnWriteArrayList<EventSink>();
+        writer = new Thread(this::drain, "change-publisher");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param sink: sink to receive every batch from now on
+     */
+    public void addSink(EventSink sink) {
+        sinks.add(sink);
+    }
+
+    @Override
+    public void userAdded(User user) {
+        publish(ChangeEvent.Type.USER_CREATED, user.getCreationTime(), user.toString(),
+                user.getGroup().toString(), 0, null);
+    }
+
+    @Override
+    public void groupAdded(UserGroup group) {
+        publish(ChangeEvent.Type.GROUP_CREATED, group.getCreationTime(), group.toString(),
+                group.getParent() != null ? group.getParent().toString() : null, 0, null);
+    }
+
+    @Override
+    public void followed(User follower, User followee) {
+        publish(ChangeEvent.Type.FOLLOWED, System.currentTimeMillis(), follower.toString(), followee.toString(), 0,
+                null);
+    }
+
+    @Override
+    public void tweetPosted(User author, long id, String tweet, long time) {
+        publish(ChangeEvent.Type.TWEET_POSTED, time, author.toString(), null, id, tweet);
+    }
+
+    @Override
+    public void tweetDeleted(User author, long id) {
+        publish(ChangeEvent.Type.TWEET_DELETED, System.currentTimeMillis(), author.toString(), null, id, null);
+    }
+
+    /**
+     * Writes whatever is left in the ring, then closes every sink. Changes
+     * made from now on, including those blocked on a full ring, are ignored.
+     */
+    public void close() throws IOException, InterruptedException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        writer.join();
+        for (EventSink sink : sinks) {
+            sink.close();
+        }
+        if (spillSink != null) {
+            spillSink.close();
+        }
+    }
+
+    /**
+     * @return number of events written to the regular sinks
+     */
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return number of events discarded under DROP
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return number of events written to the spill sink under SPILL
+     */
+    public synchronized long getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * @return number of batches a sink failed to write
+     */
+    public synchronized long getFailedBatches() {
+        return failedBatches;
+    }
+
+    private void publish(ChangeEvent.Type type, long time, String subject, String target, long tweetId,
+            String text) {
+        ChangeEvent spill;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            while (size == ring.length && policy == OverflowPolicy.BLOCK && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped++;
+                    return;
+                }
+            }
+            if (closed) {
+                return; // closed while waiting for room
+            }
+            ChangeEvent event = new ChangeEvent(nextSequence++, type, time, subject, target, tweetId, text);
+            if (size < ring.length) {
+                ring[(head + size) % ring.length] = event;
+                if (size++ == 0) {
+                    notifyAll();
+                }
+                return;
+            }
+            if (policy == OverflowPolicy.DROP) {
+                dropped++;
+                return;
+            }
+            spilled++;
+            spill = event;
+        }
+        // written outside the lock so the ring keeps moving meanwhile
+        try {
+            ArrayList<ChangeEvent> one = new ArrayList<ChangeEvent>(1);
+            one.add(spill);
+            spillSink.write(one);
+        } catch (IOException e) {
+            Log.warn("cdc.spill.failed", "error", e.getMessage());
+            synchronized (this) {
+                failedBatches++;
+            }
+        }
+    }
+
+    /**
+     * Body of the writer thread
+     */
+    private void drain() {
+        while (true) {
+            List<ChangeEvent> batch = new ArrayList<ChangeEvent>(batchSize);
+            synchronized (this) {
+                while (size == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (size == 0) {
+                    return; // closed and empty
+                }
+                while (size > 0 && batch.size() < batchSize) {
+                    batch.add(ring[head]);
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                    size--;
+                }
+                notifyAll(); // wake producers blocked on a full ring
+            }
+            boolean failed = false;
+            for (EventSink sink : sinks) {
+                try {
+                    sink.write(batch);
+                } catch (IOException e) {
+                    Log.warn("cdc.write.failed", "sink", sink.getClass().getSimpleName(), "events", batch.size(),
+                            "error", e.getMessage());
+                    failed = true;
+                }
+            }
+            synchronized (this) {
+                published += batch.size();
+                if (failed) {
+                    failedBatches++;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
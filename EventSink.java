@@ -0,0 +1,20 @@
+
+/**
+ * @author Kevin Wong
+ * Destination for ChangeEvents published by a ChangePublisher. Batches are
+ * written from a single thread, in sequence order.
+ */
+import java.io.IOException;
+import java.util.List;
+
+public interface EventSink {
+    /**
+     * @param batch: events to write, oldest first
+     */
+    public void write(List<ChangeEvent> batch) throws IOException;
+
+    /**
+     * Flushes and releases anything held by this sink
+     */
+    public void close() throws IOException;
+}
\ No newline at end of file
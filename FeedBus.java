@@ -0,0 +1,439 @@
+
+/**
+ * @author Kevin Wong
+ * News feed of a single User, shared by every UserView open on that User.
+ * Entries are only ever appended, so each view reads the same entries instead
+ * of building its own copy. Publishing appends the entry and at most schedules
+ * one refresh on the event dispatch thread, which then updates every attached
+ * view at once, so posting costs the same however many windows are open.
+ *
+ * An entry is just the author and id of a tweet. The text is read from the
+ * author when the feed is shown, and tweets the author has deleted are left
+ * out at that point, until a TweetCompactor drops them for good. Entries are
+ * kept in id order, which is the order the tweets were posted in, so older
+ * tweets can be merged in when following someone new. Group broadcasts are
+ * entries without an author, read from the tree's GroupBroadcaster.
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.AbstractListModel;
+import javax.swing.DefaultListModel;
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
+
+public class FeedBus extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+
+    private UserTree tree;
+    private User owner;
+    private Tombstones tombstones;
+    private User[] authors = new User[16];
+    private long[] ids = new long[16];
+    private int numEntries = 0;
+    // newest id the views have been refreshed up to
+    private long seenId = Long.MIN_VALUE;
+    // oldest id inserted at or before seenId since the last refresh, the views
+    // reload from there on, Long.MAX_VALUE if none
+    private long dirtyId = Long.MAX_VALUE;
+    // ids of tweets deleted since the last refresh, their rows are removed
+    private long[] deletedIds = new long[4];
+    private int numDeletedIds = 0;
+    // what the attached views show, oldest first, EDT only
+    private String[] shown = new String[16];
+    private long[] shownIds = new long[16];
+    private int numShown = 0;
+    private volatile int numViews = 0;
+    private AtomicBoolean refreshPending = new AtomicBoolean();
+
+    /**
+     * Constructor
+     *
+     * @param tree:  tree of the owner, or null if it has none
+     * @param owner: user this feed belongs to, charged for its entries, may be
+     *               null
+     */
+    public FeedBus(UserTree tree, User owner) {
+        this.tree = tree;
+        this.owner = owner;
+        this.tombstones = tree != null ? tree.getTombstones() : null;
+    }
+
+    /**
+     * Adds a tweet to the top of the feed. A tweet overtaken by a newer one on
+     * its way here is moved back to its place, usually by a step or two.
+     *
+     * @param author: the user that posted the tweet, or null for a broadcast
+     * @param id:     id of the tweet or broadcast
+     */
+    public void publish(User author, long id) {
+        synchronized (this) {
+            ensureCapacity(numEntries + 1);
+            int i = numEntries;
+            while (i > 0 && ids[i - 1] > id) {
+                authors[i] = authors[i - 1];
+                ids[i] = ids[i - 1];
+                i--;
+            }
+            authors[i] = author;
+            ids[i] = id;
+            numEntries++;
+            charge(1);
+            if (id <= seenId) {
+                dirtyId = Math.min(dirtyId, id);
+            }
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Pulls the latest tweets of newly followed users into the feed. The
+     * tweets of each user are already in order, so they are merged with each
+     * other and then with the part of the feed newer than the oldest of them,
+     * leaving older entries where they are.
+     *
+     * @param followees: users whose tweets to add
+     * @param perUser:   most tweets to take from each user, newest first
+     * @return number of entries added
+     */
+    public int backfill(List<User> followees, int perUser) {
+        // one ascending run of ids per followee, merged through a heap
+        PriorityQueue<Run> heads = new PriorityQueue<Run>();
+        int total = 0;
+        for (User followee : followees) {
+            Run run = Run.latest(followee, perUser);
+            if (run.size > 0) {
+                heads.add(run);
+                total += run.size;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        User[] newAuthors = new User[total];
+        long[] newIds = new long[total];
+        for (int n = 0; n < total; n++) {
+            Run run = heads.poll();
+            newAuthors[n] = run.author;
+            newIds[n] = run.ids[run.next++];
+            if (run.next < run.size) {
+                heads.add(run);
+            }
+        }
+
+        int added = 0;
+        synchronized (this) {
+            // only the entries newer than the oldest new one have to move
+            int start = Arrays.binarySearch(ids, 0, numEntries, newIds[0]);
+            start = start >= 0 ? start : -start - 1;
+            int tail = numEntries - start;
+            User[] tailAuthors = Arrays.copyOfRange(authors, start, numEntries);
+            long[] tailIds = Arrays.copyOfRange(ids, start, numEntries);
+            ensureCapacity(numEntries + total);
+            int i = 0;
+            int j = 0;
+            int out = start;
+            while (i < tail || j < total) {
+                if (j == total || (i < tail && tailIds[i] <= newIds[j])) {
+                    if (j < total && tailIds[i] == newIds[j]) {
+                        j++; // already delivered
+                    }
+                    authors[out] = tailAuthors[i];
+                    ids[out++] = tailIds[i++];
+                } else {
+                    authors[out] = newAuthors[j];
+                    ids[out++] = newIds[j++];
+                    added++;
+                }
+            }
+            numEntries = out;
+            charge(added);
+            if (added > 0 && newIds[0] <= seenId) {
+                dirtyId = Math.min(dirtyId, newIds[0]);
+            }
+        }
+        scheduleRefresh();
+        return added;
+    }
+
+    /**
+     * @param limit: most entries to return
+     * @return text of the newest entries, newest first, without deleted tweets
+     */
+    public synchronized List<String> read(int limit) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (int i = numEntries - 1; i >= 0 && result.size() < limit; i--) {
+            String text = render(authors[i], ids[i]);
+            if (text != null) {
+                result.add(text);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the entries of deleted tweets and retired broadcasts, called by
+     * TweetCompactor. Rows of deleted tweets were already taken out of the
+     * views by tweetDeleted(), or never shown.
+     */
+    public synchronized void purgeDeleted() {
+        int kept = 0;
+        for (int i = 0; i < numEntries; i++) {
+            boolean gone = authors[i] == null ? tree.getBroadcaster().get(ids[i]) == null
+                    : authors[i].isDeleted(authors[i].indexOfTweet(ids[i]));
+            if (!gone) {
+                authors[kept] = authors[i];
+                ids[kept] = ids[i];
+                kept++;
+            }
+        }
+        if (kept < numEntries) {
+            charge(kept - numEntries);
+            Arrays.fill(authors, kept, numEntries, null);
+            numEntries = kept;
+        }
+    }
+
+    /**
+     * @param entries: change in number of entries
+     */
+    private void charge(int entries) {
+        if (owner != null) {
+            owner.account(entries * MemoryMeter.FEED_ENTRY);
+        }
+    }
+
+    /**
+     * Shows this feed in view and keeps it up to date
+     *
+     * @param view: list in a UserView, must be called on the event dispatch thread
+     */
+    public void attach(JList<String> view) {
+        if (numViews == 0) {
+            // deletions were not watched while no view was attached
+            synchronized (this) {
+                dirtyId = Long.MIN_VALUE;
+            }
+        }
+        refresh();
+        view.setModel(this);
+        if (numViews++ == 0 && tombstones != null) {
+            tombstones.watch(this);
+        }
+    }
+
+    /**
+     * Stops updating view, so a closed window is not kept alive by this feed
+     *
+     * @param view: list passed to attach(), must be called on the event dispatch
+     *              thread
+     */
+    public void detach(JList<String> view) {
+        if (view.getModel() == this) {
+            view.setModel(new DefaultListModel<String>());
+            if (--numViews == 0 && tombstones != null) {
+                tombstones.unwatch(this);
+            }
+        }
+    }
+
+    /**
+     * @return number of views currently attached
+     */
+    public int getNumViews() {
+        return numViews;
+    }
+
+    /**
+     * @return number of entries shown by the attached views
+     */
+    @Override
+    public int getSize() {
+        return numShown;
+    }
+
+    /**
+     * @param index: position in the feed, 0 being the newest shown entry
+     * @return the entry at index
+     */
+    @Override
+    public String getElementAt(int index) {
+        return shown[numShown - 1 - index];
+    }
+
+    /**
+     * Makes the attached views refresh soon, at most once however often this
+     * is called before they do
+     */
+    void scheduleRefresh() {
+        if (numViews > 0 && refreshPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    /**
+     * Removes the entry of a retired broadcast, and its row from the attached
+     * views, called by GroupBroadcaster
+     *
+     * @param id: id of the broadcast
+     */
+    void dropBroadcast(long id) {
+        synchronized (this) {
+            int i = Arrays.binarySearch(ids, 0, numEntries, id);
+            if (i < 0 || authors[i] != null) {
+                return;
+            }
+            System.arraycopy(authors, i + 1, authors, i, numEntries - i - 1);
+            System.arraycopy(ids, i + 1, ids, i, numEntries - i - 1);
+            authors[--numEntries] = null;
+            charge(-1);
+        }
+        // without views there is no row, and attach() reloads them all
+        if (numViews > 0) {
+            tweetDeleted(id);
+        }
+    }
+
+    /**
+     * Takes a deleted tweet out of the attached views on their next refresh,
+     * called by Tombstones
+     *
+     * @param id: id of the deleted tweet
+     */
+    void tweetDeleted(long id) {
+        synchronized (this) {
+            if (numDeletedIds == deletedIds.length) {
+                deletedIds = Arrays.copyOf(deletedIds, numDeletedIds * 2);
+            }
+            deletedIds[numDeletedIds++] = id;
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Tells the attached views about what changed since the last refresh: the
+     * rows of deleted tweets are removed, entries merged in among the shown
+     * ones are reloaded from the oldest of them on, and newly published entries
+     * are added on top. Rows older than any change are left alone.
+     */
+    private void refresh() {
+        refreshPending.set(false);
+        synchronized (this) {
+            for (int k = 0; k < numDeletedIds; k++) {
+                int row = Arrays.binarySearch(shownIds, 0, numShown, deletedIds[k]);
+                if (row >= 0) {
+                    System.arraycopy(shown, row + 1, shown, row, numShown - row - 1);
+                    System.arraycopy(shownIds, row + 1, shownIds, row, numShown - row - 1);
+                    shown[--numShown] = null;
+                    // rows are numbered from the newest
+                    fireIntervalRemoved(this, numShown - row, numShown - row);
+                }
+            }
+            numDeletedIds = 0;
+
+            int from;
+            if (dirtyId != Long.MAX_VALUE) {
+                int keep = lowerBound(shownIds, numShown, dirtyId);
+                if (keep < numShown) {
+                    int old = numShown;
+                    Arrays.fill(shown, keep, numShown, null);
+                    numShown = keep;
+                    fireIntervalRemoved(this, 0, old - keep - 1);
+                }
+                from = lowerBound(ids, numEntries, dirtyId);
+                dirtyId = Long.MAX_VALUE;
+            } else {
+                from = lowerBound(ids, numEntries, seenId + 1);
+            }
+            int before = numShown;
+            for (int i = from; i < numEntries; i++) {
+                String text = render(authors[i], ids[i]);
+                if (text != null) {
+                    if (numShown == shown.length) {
+                        shown = Arrays.copyOf(shown, numShown * 2);
+                        shownIds = Arrays.copyOf(shownIds, numShown * 2);
+                    }
+                    shownIds[numShown] = ids[i];
+                    shown[numShown++] = text;
+                }
+            }
+            if (numEntries > 0) {
+                seenId = Math.max(seenId, ids[numEntries - 1]);
+            }
+            if (numShown > before) {
+                // newest entries go on top
+                fireIntervalAdded(this, 0, numShown - before - 1);
+            }
+        }
+    }
+
+    /**
+     * @return index of the first of the first length values that is at least
+     *         id, or length if there is none
+     */
+    private static int lowerBound(long[] values, int length, long id) {
+        int i = Arrays.binarySearch(values, 0, length, id);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int length = Math.max(capacity, ids.length * 2);
+            authors = Arrays.copyOf(authors, length);
+            ids = Arrays.copyOf(ids, length);
+        }
+    }
+
+    /**
+     * @return line shown for a tweet, or null if it has been deleted
+     */
+    private String render(User author, long id) {
+        if (author == null) {
+            GroupBroadcaster.Broadcast b = tree.getBroadcaster().get(id);
+            if (b == null) {
+                return null; // retired by the broadcaster
+            }
+            return " * " + b.getGroup() + ": " + b.getMessage();
+        }
+        int i = author.indexOfTweet(id);
+        if (author.isDeleted(i)) {
+            return null;
+        }
+        return " - " + author + ": " + author.getTweet(i);
+    }
+
+    /**
+     * Latest tweets of one user in ascending id order, consumed by backfill()
+     */
+    private static class Run implements Comparable<Run> {
+        private User author;
+        private long[] ids;
+        private int size = 0;
+        private int next = 0;
+
+        private static Run latest(User author, int limit) {
+            Run run = new Run();
+            run.author = author;
+            run.ids = new long[limit];
+            // walk back from the newest, skipping deleted tweets
+            for (int i = author.numTweets() - 1; i >= 0 && run.size < limit; i--) {
+                if (!author.isDeleted(i)) {
+                    run.ids[run.size++] = author.getTweetId(i);
+                }
+            }
+            for (int lo = 0, hi = run.size - 1; lo < hi; lo++, hi--) {
+                long swap = run.ids[lo];
+                run.ids[lo] = run.ids[hi];
+                run.ids[hi] = swap;
+            }
+            return run;
+        }
+
+        public int compareTo(Run other) {
+            return Long.compare(ids[next], other.ids[other.next]);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,159 @@
+
+/**
+ * @author Kevin Wong
+ * Suggests accounts to follow by looking two hops out along the followings
+ * graph: anyone followed by the people a User follows is a candidate, ranked by
+ * how many of those people follow them, with a boost for candidates in the same
+ * UserGroup. Every query has an edge and time budget so users following very
+ * popular accounts cannot make it slow, and results are cached per User until
+ * a follow changes them. Results cut short by the budget are not cached.
+ *
+ * Queries run without holding any lock, so follows never wait for them. A
+ * query marks its cache slot before computing and only stores its result if
+ * the mark is still there, so a follow landing mid-query is not overwritten
+ * with a stale result.
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FollowRecommender implements TreeListener {
+    // score added to candidates in the same group as the user
+    public static final double SAME_GROUP_BOOST = 1.0;
+
+    private UserTree tree;
+    private int maxEdges;
+    private long maxNanos;
+    private ConcurrentHashMap<User, Slot> cache;
+
+    /**
+     * Constructor with a budget of 10,000 edges and 20ms per query
+     *
+     * @param tree: tree the users belong to
+     */
+    public FollowRecommender(UserTree tree) {
+        this(tree, 10000, 20);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param tree:      tree the users belong to
+     * @param maxEdges:  most followings entries to examine per query
+     * @param maxMillis: most time to spend per query
+     */
+    public FollowRecommender(UserTree tree, int maxEdges, long maxMillis) {
+        this.tree = tree;
+        this.maxEdges = maxEdges;
+        this.maxNanos = maxMillis * 1000000L;
+        cache = new ConcurrentHashMap<User, Slot>();
+    }
+
+    /**
+     * A new follow changes the suggestions of the follower, and of everyone who
+     * follows the follower since it is one of their second hops
+     */
+    @Override
+    public void followed(User follower, User followee) {
+        cache.remove(follower);
+        for (Observer o : follower.getFollowers()) {
+            cache.remove(o);
+        }
+    }
+
+    /**
+     * @param user: User to suggest accounts for
+     * @param k:    number of suggestions
+     * @return up to k Users that user does not follow yet, best first
+     */
+    public List<User> recommend(User user, int k) {
+        Slot slot = cache.get(user);
+        List<User> result = slot != null ? slot.users : null;
+        if (result == null) {
+            Slot pending = new Slot(null);
+            // another query already computing for user leaves its mark, this
+            // one then just computes without caching
+            boolean marked = cache.putIfAbsent(user, pending) == null;
+            Slot computed = compute(user);
+            result = computed.users;
+            if (marked) {
+                if (computed.complete) {
+                    cache.replace(user, pending, computed);
+                } else {
+                    cache.remove(user, pending);
+                }
+            }
+        }
+        return result.subList(0, Math.min(k, result.size()));
+    }
+
+    /**
+     * Bounded two hop walk, stopping once either budget is spent. The
+     * followings are iterated in place rather than copied, and every id looked
+     * at counts as an edge, so a friend following millions of accounts costs
+     * no more than the budget.
+     */
+    private Slot compute(User user) {
+        boolean complete = true;
+        long deadline = System.nanoTime() + maxNanos;
+        int edges = 0;
+        HashMap<User, Double> scores = new HashMap<User, Double>();
+        walk: for (String id : user.followingsView()) {
+            if (++edges > maxEdges || System.nanoTime() > deadline) {
+                complete = false;
+                break;
+            }
+            User friend = tree.findUser(id);
+            if (friend == null || friend == user) {
+                continue;
+            }
+            for (String candidateId : friend.followingsView()) {
+                if (++edges > maxEdges || System.nanoTime() > deadline) {
+                    complete = false;
+                    break walk;
+                }
+                if (user.isFollowing(candidateId)) {
+                    continue; // also skips the user itself
+                }
+                User candidate = tree.findUser(candidateId);
+                if (candidate != null) {
+                    scores.merge(candidate, 1.0, Double::sum);
+                }
+            }
+        }
+        ArrayList<Map.Entry<User, Double>> ranked = new ArrayList<Map.Entry<User, Double>>();
+        for (Map.Entry<User, Double> e : scores.entrySet()) {
+            if (e.getKey().getGroup() == user.getGroup()) {
+                e.setValue(e.getValue() + SAME_GROUP_BOOST);
+            }
+            ranked.add(e);
+        }
+        ranked.sort((a, b) -> {
+            int byScore = Double.compare(b.getValue(), a.getValue());
+            return byScore != 0 ? byScore : a.getKey().toString().compareTo(b.getKey().toString());
+        });
+        ArrayList<User> result = new ArrayList<User>(ranked.size());
+        for (Map.Entry<User, Double> e : ranked) {
+            result.add(e.getKey());
+        }
+        Slot slot = new Slot(Collections.unmodifiableList(result));
+        slot.complete = complete;
+        return slot;
+    }
+
+    /**
+     * Cached suggestions for one User, or a mark while they are computed
+     */
+    private static class Slot {
+        // null while computing
+        private List<User> users;
+        private boolean complete = true;
+
+        private Slot(List<User> users) {
+            this.users = users;
+        }
+    }
+}
\ No newline at end of file
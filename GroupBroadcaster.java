@@ -0,0 +1,250 @@
+
+/**
+ * @author Kevin Wong
+ * Delivers an announcement to every user under a UserGroup, nested groups
+ * included. The message is stored once in the TweetArena and each feed only
+ * gets its id, so a broadcast to a large group costs one small entry per user
+ * rather than a tweet per user. The subtree is walked with a parallel
+ * TreeSpliterator rooted at the group, in the background, reporting progress
+ * as it goes.
+ *
+ * Only the latest broadcasts are kept. Once there are more than the capacity,
+ * the oldest delivered ones are retired: their entries are taken out of the
+ * feeds they were delivered to, in the background, and their text is released
+ * from the arena one eviction later, so a feed that looked a broadcast up just
+ * before it was retired can still read it.
+ */
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+
+public class GroupBroadcaster {
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private UserTree tree;
+    private int capacity;
+    private ConcurrentHashMap<Long, Broadcast> broadcasts;
+    // the same broadcasts, oldest first
+    private ConcurrentLinkedQueue<Broadcast> order;
+    // arena handles of the broadcasts retired by the previous eviction
+    private ArrayList<Integer> toFree;
+    private ExecutorService executor;
+
+    /**
+     * Constructor keeping the latest DEFAULT_CAPACITY broadcasts
+     *
+     * @param tree: tree to broadcast in
+     */
+    public GroupBroadcaster(UserTree tree) {
+        this(tree, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Overloaded constructor to choose how many broadcasts are kept
+     *
+     * @param tree:     tree to broadcast in
+     * @param capacity: number of delivered broadcasts kept before the oldest
+     *                  are retired
+     */
+    public GroupBroadcaster(UserTree tree, int capacity) {
+        this.tree = tree;
+        this.capacity = capacity;
+        broadcasts = new ConcurrentHashMap<Long, Broadcast>();
+        order = new ConcurrentLinkedQueue<Broadcast>();
+        toFree = new ArrayList<Integer>();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "group-broadcaster");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts delivering message to every user under group and returns
+     * straight away. Users added to the group after this call do not get it.
+     *
+     * @param group:    group to broadcast to
+     * @param message:  the announcement
+     * @param progress: told about progress on the delivering threads, may be
+     *                  null
+     * @return the new broadcast
+     */
+    public Broadcast broadcast(UserGroup group, String message, Progress progress) {
+        long version = tree.snapshot();
+        long time = System.currentTimeMillis();
+        Broadcast b = new Broadcast(tree.getIdGenerator().nextId(), group, tree.getTweetArena(),
+                tree.getTweetArena().store(message), time, version, group.getNumUsers());
+        broadcasts.put(b.id, b);
+        order.add(b);
+        evict();
+        executor.execute(() -> {
+            // report about every 1% so listeners are not flooded on large groups
+            int step = Math.max(1, b.total / 100);
+            StreamSupport.stream(new TreeSpliterator(group, version), true).forEach(entry -> {
+                if (entry instanceof User) {
+                    ((User) entry).getFeed().publish(null, b.id);
+                    int done = b.delivered.incrementAndGet();
+                    if (progress != null && done % step == 0) {
+                        progress.delivered(b, done);
+                    }
+                }
+            });
+            b.completed = true;
+            Log.info("broadcast.completed", "group", group, "id", b.id, "users", b.delivered.get());
+            if (progress != null) {
+                progress.completed(b);
+            }
+        });
+        return b;
+    }
+
+    /**
+     * @param id: id of a broadcast
+     * @return the broadcast, or null if id is not one or it has been retired
+     */
+    public Broadcast get(long id) {
+        return broadcasts.get(id);
+    }
+
+    /**
+     * @return number of broadcasts not yet retired
+     */
+    public int size() {
+        return broadcasts.size();
+    }
+
+    /**
+     * Retires the oldest broadcasts while there are more than capacity. One
+     * still being delivered stops the eviction, and the ones after it wait.
+     * The feeds that got a retired broadcast drop its entry on the delivering
+     * thread, walking the same users it was delivered to.
+     */
+    private synchronized void evict() {
+        ArrayList<Broadcast> retired = new ArrayList<Broadcast>();
+        Broadcast oldest;
+        while (broadcasts.size() > capacity && (oldest = order.peek()) != null && oldest.completed) {
+            order.poll();
+            broadcasts.remove(oldest.id);
+            retired.add(oldest);
+        }
+        if (retired.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> {
+            for (Broadcast b : retired) {
+                StreamSupport.stream(new TreeSpliterator(b.group, b.version), true).forEach(entry -> {
+                    if (entry instanceof User) {
+                        ((User) entry).getFeed().dropBroadcast(b.id);
+                    }
+                });
+            }
+        });
+        // release the text retired by the previous eviction
+        TweetArena arena = tree.getTweetArena();
+        for (int handle : toFree) {
+            arena.free(handle);
+        }
+        toFree = new ArrayList<Integer>(retired.size());
+        for (Broadcast b : retired) {
+            toFree.add(b.handle);
+        }
+    }
+
+    /**
+     * @author Kevin Wong
+     *         Receives progress of a broadcast
+     */
+    public interface Progress {
+        /**
+         * @param broadcast: the broadcast being delivered
+         * @param delivered: number of users it has reached so far
+         */
+        public void delivered(Broadcast broadcast, int delivered);
+
+        /**
+         * @param broadcast: the broadcast that reached every user
+         */
+        public void completed(Broadcast broadcast);
+    }
+
+    /**
+     * @author Kevin Wong
+     *         An announcement to a group, stored once and shared by every feed
+     */
+    public static class Broadcast {
+        private long id;
+        private UserGroup group;
+        private TweetArena arena;
+        private int handle;
+        private long time;
+        // tree version the group was walked at when delivering
+        private long version;
+        private int total;
+        private AtomicInteger delivered = new AtomicInteger();
+        private volatile boolean completed = false;
+
+        private Broadcast(long id, UserGroup group, TweetArena arena, int handle, long time, long version,
+                int total) {
+            this.id = id;
+            this.group = group;
+            this.arena = arena;
+            this.handle = handle;
+            this.time = time;
+            this.version = version;
+            this.total = total;
+        }
+
+        /**
+         * @return id of the broadcast, drawn from the same generator as tweets
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return the group the broadcast was sent to
+         */
+        public UserGroup getGroup() {
+            return group;
+        }
+
+        /**
+         * @return text of the announcement, read from the arena
+         */
+        public String getMessage() {
+            return arena.get(handle);
+        }
+
+        /**
+         * @return time the broadcast started in milliseconds since 1970
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return number of users in the group when the broadcast started
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return number of users the broadcast has reached
+         */
+        public int getDelivered() {
+            return delivered.get();
+        }
+
+        /**
+         * @return true once every user in the group has the broadcast
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+
+/**
+ * @author Kevin Wong
+ * HyperLogLog sketch for estimating the number of distinct ids added to it.
+ * Every User keeps one over its followers and every UserGroup keeps one over
+ * the followers of everyone under it, each follow being added to all of them
+ * as it happens, so the reach of any group is known without unioning follower
+ * lists.
+ */
+public class HyperLogLog {
+    // 2^10 registers, about 3% standard error
+    public static final int DEFAULT_PRECISION = 10;
+
+    private int precision;
+    private byte[] registers;
+
+    /**
+     * Constructor for a sketch with DEFAULT_PRECISION
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param precision: log2 of the number of registers, between 4 and 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param error: desired relative standard error, e.g. 0.02 for 2%
+     * @return the smallest precision that meets the error bound
+     */
+    public static int precisionFor(double error) {
+        int p = 4;
+        while (p < 16 && 1.04 / Math.sqrt(1 << p) > error) {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * @param id: id to count
+     */
+    public synchronized void add(String id) {
+        long hash = hash(id);
+        int index = (int) (hash >>> (64 - precision));
+        // rank of the first set bit in the remaining bits, starting at 1
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * @return estimated number of distinct ids added
+     */
+    public synchronized long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            sum += 1.0 / (1L << registers[i]);
+            if (registers[i] == 0) {
+                zeros++;
+            }
+        }
+        double alpha = alpha(m);
+        double estimate = alpha * m * m / sum;
+        // small range correction: use linear counting while registers are empty
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return bias correction for m registers, the closed form only holds from
+     *         128 registers up, smaller sketches use the published constants
+     */
+    private static double alpha(int m) {
+        switch (m) {
+        case 16:
+            return 0.673;
+        case 32:
+            return 0.697;
+        case 64:
+            return 0.709;
+        default:
+            return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * @return the relative standard error of this sketch
+     */
+    public double getError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * @return precision of this sketch
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters of id followed by a final mix so that
+     * similar ids spread over all registers
+     */
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
\ No newline at end of file
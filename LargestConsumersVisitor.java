@@ -0,0 +1,114 @@
+
+/**
+ * @author Kevin Wong
+ *         Visitor that keeps the k users, or the k groups, with the largest
+ *         estimated retained size. Sizes are kept up to date by the entries
+ *         themselves, so this only reads a counter per entry and keeps a heap
+ *         of k. Groups are ranked by their whole subtree. The counters keep
+ *         moving while posts and follows run, so each size is read once, when
+ *         the entry is offered, and everything is ordered by that reading.
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class LargestConsumersVisitor implements SysEntryVisitor<List<SysEntry>> {
+    private static final Comparator<Sized> BY_SIZE = Comparator.comparingLong((Sized s) -> s.bytes);
+
+    private int k;
+    private boolean groups;
+    private SysEntry skip;
+    // smallest of the k largest at the head
+    private PriorityQueue<Sized> largest = new PriorityQueue<Sized>(BY_SIZE);
+
+    /**
+     * Constructor
+     * 
+     * @param k:      number of entries to keep
+     * @param groups: true to rank groups, false to rank users
+     * @param skip:   entry to leave out, e.g. the group the traversal starts
+     *                from, may be null
+     */
+    public LargestConsumersVisitor(int k, boolean groups, SysEntry skip) {
+        this.k = k;
+        this.groups = groups;
+        this.skip = skip;
+    }
+
+    public boolean visit(User user) {
+        if (!groups) {
+            offer(user);
+        }
+        return true;
+    }
+
+    public boolean visit(UserGroup group) {
+        if (groups && group != skip) {
+            offer(group);
+        }
+        return true;
+    }
+
+    /**
+     * @return the largest entries visited, largest first
+     */
+    public List<SysEntry> getResult() {
+        ArrayList<Sized> sorted = new ArrayList<Sized>(largest);
+        Collections.sort(sorted, BY_SIZE.reversed());
+        ArrayList<SysEntry> result = new ArrayList<SysEntry>(sorted.size());
+        for (Sized s : sorted) {
+            result.add(s.entry);
+        }
+        return result;
+    }
+
+    public SysEntryVisitor<List<SysEntry>> fork() {
+        return new LargestConsumersVisitor(k, groups, skip);
+    }
+
+    public void merge(SysEntryVisitor<List<SysEntry>> other) {
+        // keep the sizes the fork read rather than reading them again
+        for (Sized s : ((LargestConsumersVisitor) other).largest) {
+            offer(s);
+        }
+    }
+
+    private void offer(SysEntry entry) {
+        if (k <= 0) {
+            return;
+        }
+        long bytes = entry.getRetainedBytes();
+        // most entries are smaller than all k kept, so skip the pair for them
+        if (largest.size() < k || bytes > largest.peek().bytes) {
+            offer(new Sized(entry, bytes));
+        }
+    }
+
+    private void offer(Sized s) {
+        if (k <= 0) {
+            return;
+        }
+        if (largest.size() < k) {
+            largest.add(s);
+        } else if (s.bytes > largest.peek().bytes) {
+            largest.poll();
+            largest.add(s);
+        }
+    }
+
+    /**
+     * An entry with its size as read when it was offered
+     */
+    private static class Sized {
+        private SysEntry entry;
+        private long bytes;
+
+        private Sized(SysEntry entry, long bytes) {
+            this.entry = entry;
+            this.bytes = bytes;
+        }
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+
+/**
+ * @author Kevin Wong
+ * Thread-safe histogram of latencies in nanoseconds with about 3% precision.
+ * Each power of two is split into 32 buckets, so recording is a couple of
+ * shifts and an atomic increment, and percentiles are read by walking the
+ * bucket counts.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    // values below this are counted exactly
+    private static final int LINEAR = 2 * SUB;
+    private static final int NUM_BUCKETS = LINEAR + 58 * SUB;
+
+    private AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private AtomicLong total = new AtomicLong();
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos: latency to count
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(v));
+        total.incrementAndGet();
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @return largest latency recorded, in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile: e.g. 99.9
+     * @return upper bound of the bucket holding that percentile, in nanoseconds,
+     *         or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int bucketOf(long v) {
+        if (v < LINEAR) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return LINEAR + (shift - 1) * SUB + (int) ((v >>> shift) - SUB);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR) / SUB + 1;
+        long top = (bucket - LINEAR) % SUB + SUB;
+        return ((top + 1) << shift) - 1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,304 @@
+
+/**
+ * @author Kevin Wong
+ * Headless load driver. Builds a UserTree of simulated users and runs many
+ * clients against it at once. Each client repeatedly waits a random think
+ * time, then posts a tweet, follows someone or reads its feed, chosen by a
+ * configurable mix. The latency of every operation is recorded and reported
+ * as p50/p99/p999 and throughput per operation type.
+ *
+ * Clients run on virtual threads when the JVM has them (Java 21 and later,
+ * looked up reflectively so this still compiles on older JDKs). Otherwise
+ * each client is a task that reschedules itself on a small scheduled pool, so
+ * thousands of clients still do not need thousands of platform threads.
+ *
+ * Saturation mode starts with a small number of clients and multiplies it
+ * every step until the p99 of some operation passes the target, then reports
+ * the last step that met it.
+ *
+ * Usage: java LoadTest [key=value ...]
+ *   clients=2000 seconds=10 users=1000 groups=20 think=50
+ *   mix=post:20,follow:5,read:75 limits=off
+ *   saturate=false target99=5 step=5 start=100 growth=2
+ * Times are in milliseconds except seconds and step, which are in seconds.
+ */
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadTest {
+    private static final String[] OPS = { "post", "follow", "read" };
+    private static final String[] WORDS = { "good", "morning", "lol", "coffee", "java", "happy", "tweet", "#friday",
+            "#java", "great", "lunch", "meh" };
+
+    private UserTree tree;
+    private User[] users;
+    private int[] mix; // cumulative percentages of OPS
+    private long thinkMillis;
+
+    public static void main(String args[]) throws Exception {
+        HashMap<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        // building the tree would otherwise log every user added
+        Log.setLevel(Log.parseLevel(option(options, "log", "WARN")));
+        LoadTest test = new LoadTest(Integer.parseInt(option(options, "users", "1000")),
+                Integer.parseInt(option(options, "groups", "20")), option(options, "mix", "post:20,follow:5,read:75"),
+                Long.parseLong(option(options, "think", "50")), option(options, "limits", "off").equals("on"));
+        System.out.println("Clients run on " + (virtualExecutor() != null ? "virtual threads" : "a scheduled pool"));
+
+        if (Boolean.parseBoolean(option(options, "saturate", "false"))) {
+            test.saturate(Integer.parseInt(option(options, "start", "100")),
+                    Double.parseDouble(option(options, "growth", "2")),
+                    Integer.parseInt(option(options, "step", "5")),
+                    Double.parseDouble(option(options, "target99", "5")));
+        } else {
+            int clients = Integer.parseInt(option(options, "clients", "2000"));
+            Stats stats = test.run(clients, Integer.parseInt(option(options, "seconds", "10")));
+            stats.print(clients);
+        }
+    }
+
+    /**
+     * Constructor that builds the tree to test against
+     *
+     * @param numUsers:    number of users
+     * @param numGroups:   number of groups the users are spread over
+     * @param mix:         percentages of each operation, e.g. post:20,follow:5,read:75
+     * @param thinkMillis: mean pause between the operations of a client
+     * @param limits:      true to keep the default rate limits, false to lift them
+     */
+    public LoadTest(int numUsers, int numGroups, String mix, long thinkMillis, boolean limits) {
+        this.thinkMillis = thinkMillis;
+        this.mix = parseMix(mix);
+        tree = new UserTree();
+        if (!limits) {
+            tree.getPostLimiter().setLimits(1e9, Integer.MAX_VALUE / 1000, 1e9, Integer.MAX_VALUE / 1000);
+            tree.getFollowLimiter().setLimits(1e9, Integer.MAX_VALUE / 1000, 1e9, Integer.MAX_VALUE / 1000);
+        }
+        UserGroup[] groups = new UserGroup[Math.max(1, numGroups)];
+        groups[0] = tree.getRoot();
+        for (int g = 1; g < groups.length; g++) {
+            // a mix of top level and nested groups
+            groups[g] = tree.addGroup("group" + g, groups[g / 2]);
+        }
+        users = new User[numUsers];
+        for (int i = 0; i < numUsers; i++) {
+            users[i] = tree.addUser("user" + i, groups[i % groups.length]);
+        }
+    }
+
+    /**
+     * Runs a fixed number of clients for a fixed time
+     *
+     * @param clients: number of simulated clients
+     * @param seconds: how long to run
+     * @return latencies and counts of every operation
+     */
+    public Stats run(int clients, int seconds) throws InterruptedException {
+        Stats stats = new Stats();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService virtual = virtualExecutor();
+        if (virtual != null) {
+            for (int c = 0; c < clients; c++) {
+                virtual.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            Thread.sleep(think());
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        operate(stats);
+                    }
+                });
+            }
+            virtual.shutdown();
+            virtual.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        } else {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+            ScheduledExecutorService pool = Executors.newScheduledThreadPool(threads);
+            for (int c = 0; c < clients; c++) {
+                pool.schedule(new Client(pool, stats, deadline), think(), TimeUnit.MILLISECONDS);
+            }
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            pool.shutdown();
+            pool.awaitTermination(60, TimeUnit.SECONDS);
+        }
+        stats.seconds = seconds;
+        return stats;
+    }
+
+    /**
+     * Multiplies the number of clients until the p99 of some operation passes
+     * target99Millis, printing every step
+     */
+    public void saturate(int start, double growth, int stepSeconds, double target99Millis)
+            throws InterruptedException {
+        long target = (long) (target99Millis * 1000000);
+        int clients = start;
+        int lastGood = 0;
+        while (true) {
+            Stats stats = run(clients, stepSeconds);
+            stats.print(clients);
+            String violated = null;
+            for (int i = 0; i < OPS.length; i++) {
+                if (stats.latencies[i].percentile(99) > target) {
+                    violated = OPS[i];
+                }
+            }
+            if (violated != null) {
+                System.out.println("p99 of " + violated + " exceeded " + target99Millis + " ms at " + clients
+                        + " clients, last step within target: " + (lastGood > 0 ? lastGood + " clients" : "none"));
+                return;
+            }
+            lastGood = clients;
+            clients = (int) Math.ceil(clients * growth);
+        }
+    }
+
+    /**
+     * Performs one operation picked by the mix and records its latency
+     */
+    private void operate(Stats stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        User user = users[random.nextInt(users.length)];
+        int roll = random.nextInt(100);
+        int op = 0;
+        while (op < OPS.length - 1 && roll >= mix[op]) {
+            op++;
+        }
+        long start = System.nanoTime();
+        boolean accepted = true;
+        if (op == 0) {
+            String tweet = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " "
+                    + random.nextInt(1000);
+            long id = user.postTweet(tweet);
+            if (id >= 0) {
+                user.notifyObservers(id, tweet);
+            } else {
+                accepted = false;
+            }
+        } else if (op == 1) {
+            accepted = tree.follow(user, users[random.nextInt(users.length)].toString());
+        } else {
+            user.getFeed().read(20);
+        }
+        stats.latencies[op].record(System.nanoTime() - start);
+        if (!accepted) {
+            stats.rejected[op].incrementAndGet();
+        }
+    }
+
+    /**
+     * @return exponentially distributed pause with mean thinkMillis
+     */
+    private long think() {
+        if (thinkMillis <= 0) {
+            return 0;
+        }
+        return (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * thinkMillis);
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or null on JVMs
+     *         without virtual threads
+     */
+    private static ExecutorService virtualExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static int[] parseMix(String mix) {
+        HashMap<String, Integer> parts = new HashMap<String, Integer>();
+        int sum = 0;
+        for (String part : mix.split(",")) {
+            String[] kv = part.split(":");
+            parts.put(kv[0].trim(), Integer.parseInt(kv[1].trim()));
+            sum += Integer.parseInt(kv[1].trim());
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("mix must add up to more than 0");
+        }
+        int[] cumulative = new int[OPS.length];
+        int running = 0;
+        for (int i = 0; i < OPS.length; i++) {
+            Integer weight = parts.get(OPS[i]);
+            running += weight != null ? weight : 0;
+            cumulative[i] = running * 100 / sum;
+        }
+        return cumulative;
+    }
+
+    private static String option(Map<String, String> options, String key, String fallback) {
+        String value = options.get(key);
+        return value != null ? value : fallback;
+    }
+
+    /**
+     * A client on the scheduled pool: one operation per run, then it schedules
+     * its next run after a think time
+     */
+    private class Client implements Runnable {
+        private ScheduledExecutorService pool;
+        private Stats stats;
+        private long deadline;
+
+        private Client(ScheduledExecutorService pool, Stats stats, long deadline) {
+            this.pool = pool;
+            this.stats = stats;
+            this.deadline = deadline;
+        }
+
+        public void run() {
+            if (System.nanoTime() >= deadline) {
+                return;
+            }
+            operate(stats);
+            if (!pool.isShutdown()) {
+                pool.schedule(this, think(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Results of one run
+     */
+    public static class Stats {
+        private LatencyHistogram[] latencies = new LatencyHistogram[OPS.length];
+        private AtomicLong[] rejected = new AtomicLong[OPS.length];
+        private int seconds;
+
+        private Stats() {
+            for (int i = 0; i < OPS.length; i++) {
+                latencies[i] = new LatencyHistogram();
+                rejected[i] = new AtomicLong();
+            }
+        }
+
+        private void print(int clients) {
+            System.out.printf("%d clients, %d s%n", clients, seconds);
+            System.out.printf("  %-7s %10s %10s %10s %10s %10s %10s%n", "op", "count", "ops/sec", "p50 us",
+                    "p99 us", "p999 us", "rejected");
+            for (int i = 0; i < OPS.length; i++) {
+                LatencyHistogram h = latencies[i];
+                System.out.printf("  %-7s %10d %10d %10.1f %10.1f %10.1f %10d%n", OPS[i], h.getCount(),
+                        h.getCount() / Math.max(1, seconds), h.percentile(50) / 1000.0, h.percentile(99) / 1000.0,
+                        h.percentile(99.9) / 1000.0, rejected[i].get());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,252 @@
+
+/**
+ * @author Kevin Wong
+ * Asynchronous structured logging. A log call checks the level, packs the
+ * event name and its key/value fields into an entry and hands it over through
+ * a lock-free queue, so the calling thread never formats text, touches the
+ * console or takes a lock. A background thread formats the entries as
+ * "time level event key=value ..." lines, writes out everything waiting and
+ * flushes once the queue is drained, then parks. Only the call that finds
+ * nothing pending wakes it, so a busy writer costs the callers nothing more.
+ *
+ * The level is read from -Dminitwitter.log.level (INFO by default, and when
+ * the property is not a level). On hot paths, guard the call with isEnabled()
+ * so nothing at all is allocated while the level is off. The queue holds at
+ * most MAX_PENDING entries, beyond that entries are dropped and counted rather
+ * than slowing the caller down.
+ */
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public final class Log {
+    /**
+     * Severity of an entry, entries below the current level are ignored
+     */
+    public enum Level {
+        TRACE, DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    // most entries waiting to be written
+    public static final int MAX_PENDING = 1 << 16;
+
+    private static volatile int threshold = initialLevel().ordinal();
+    private static volatile PrintStream output = System.err;
+    private static ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+    // entries queued or being written, bounds the queue and tells the writer
+    // whether it may park
+    private static AtomicInteger pending = new AtomicInteger();
+    private static AtomicLong dropped = new AtomicLong();
+    private static volatile Thread writer;
+
+    private Log() {
+    }
+
+    /**
+     * @return level named by -Dminitwitter.log.level, or INFO if it names none
+     */
+    private static Level initialLevel() {
+        String name = System.getProperty("minitwitter.log.level", "INFO");
+        try {
+            return parseLevel(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log level " + name + ", using INFO");
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * @param name: name of a level in any case, surrounding spaces ignored
+     * @return the level named
+     * @throws IllegalArgumentException if name is not a level
+     */
+    public static Level parseLevel(String name) {
+        return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @param level: level to check
+     * @return true if entries at level are written
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    /**
+     * @param level: lowest level to write from now on, OFF to write nothing
+     */
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    /**
+     * @param stream: where to write entries, System.err by default
+     */
+    public static void setOutput(PrintStream stream) {
+        output = stream;
+    }
+
+    /**
+     * Queues an entry for the writer thread
+     *
+     * @param level:  severity of the entry
+     * @param event:  short dotted name of what happened, e.g. tweet.posted
+     * @param fields: alternating keys and values
+     */
+    public static void log(Level level, String event, Object... fields) {
+        if (level.ordinal() < threshold) {
+            return;
+        }
+        int before = pending.getAndIncrement();
+        if (before >= MAX_PENDING) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(new Entry(System.currentTimeMillis(), level, event, fields));
+        if (before == 0) {
+            // the writer may be parked, nothing was pending
+            Thread w = writer;
+            if (w == null) {
+                startWriter();
+            } else {
+                LockSupport.unpark(w);
+            }
+        }
+    }
+
+    public static void debug(String event, Object... fields) {
+        log(Level.DEBUG, event, fields);
+    }
+
+    public static void info(String event, Object... fields) {
+        log(Level.INFO, event, fields);
+    }
+
+    public static void warn(String event, Object... fields) {
+        log(Level.WARN, event, fields);
+    }
+
+    public static void error(String event, Object... fields) {
+        log(Level.ERROR, event, fields);
+    }
+
+    /**
+     * @return number of entries dropped because the queue was full
+     */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until every entry queued so far has been written
+     */
+    public static void flush() {
+        while (pending.get() > 0 && writer != null && writer.isAlive()) {
+            LockSupport.parkNanos(100000);
+        }
+        output.flush();
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        Thread t = new Thread(Log::write, "log-writer");
+        t.setDaemon(true);
+        t.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+        writer = t;
+    }
+
+    /**
+     * Body of the writer thread. Writes entries until the queue is empty, then
+     * flushes once and parks until a log call finds nothing pending. An entry
+     * counted as pending but not in the queue yet is on its way, so the writer
+     * waits for it instead of parking, since its caller will not unpark it.
+     */
+    private static void write() {
+        StringBuilder line = new StringBuilder(128);
+        boolean written = false;
+        while (true) {
+            Entry entry = queue.poll();
+            if (entry == null) {
+                if (written) {
+                    output.flush();
+                    written = false;
+                }
+                if (pending.get() == 0) {
+                    LockSupport.park(); // daemon thread, runs until the JVM exits
+                } else {
+                    Thread.onSpinWait();
+                }
+                continue;
+            }
+            line.setLength(0);
+            entry.format(line);
+            output.println(line);
+            pending.decrementAndGet();
+            written = true;
+        }
+    }
+
+    /**
+     * One queued log call
+     */
+    private static class Entry {
+        private long time;
+        private Level level;
+        private String event;
+        private Object[] fields;
+        private String thread;
+
+        private Entry(long time, Level level, String event, Object[] fields) {
+            this.time = time;
+            this.level = level;
+            this.event = event;
+            this.fields = fields;
+            this.thread = Thread.currentThread().getName();
+        }
+
+        private void format(StringBuilder line) {
+            line.append(Instant.ofEpochMilli(time)).append(' ').append(level).append(' ').append(event);
+            line.append(" thread=");
+            appendValue(line, thread);
+            for (int i = 0; i + 1 < fields.length; i += 2) {
+                line.append(' ').append(fields[i]).append('=');
+                appendValue(line, String.valueOf(fields[i + 1]));
+            }
+        }
+
+        /**
+         * Quotes values that contain spaces, quotes or equals signs
+         */
+        private static void appendValue(StringBuilder line, String value) {
+            boolean quote = value.isEmpty();
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c <= ' ' || c == '"' || c == '=';
+            }
+            if (!quote) {
+                line.append(value);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                } else if (c == '\n') {
+                    line.append("\\n");
+                } else {
+                    line.append(c);
+                }
+            }
+            line.append('"');
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+
+/**
+ * @author Kevin Wong
+ * Estimated sizes, in bytes, of the pieces of a UserTree that grow with use.
+ * Users and groups add or subtract these as they change, so their retained
+ * size is always current without walking the heap. The figures assume a
+ * 64-bit JVM with compressed references and leave out array slack, so they
+ * are estimates meant for ranking entries, not exact measurements.
+ */
+public final class MemoryMeter {
+    // a User with its empty arrays, follow set, follower list and reach sketch
+    public static final long USER = 320;
+    // a UserGroup with its empty arrays, activity index and trend tracker
+    public static final long GROUP = 480;
+    // slot of a child in its group's children and childVersions arrays
+    public static final long CHILD = 12;
+    // handle, id and version of a tweet plus its slot in the TweetArena, the
+    // text itself is counted separately
+    public static final long TWEET = 28;
+    // node of the followings set, the id String is shared with the followee
+    public static final long FOLLOWING = 40;
+    // node of the followers LinkedList
+    public static final long FOLLOWER = 24;
+    // author reference and id of one feed entry
+    public static final long FEED_ENTRY = 12;
+
+    private MemoryMeter() {
+    }
+
+    /**
+     * @param bytes: a size in bytes
+     * @return the size in B, KB or MB, e.g. 12.5 KB
+     */
+    public static String format(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
\ No newline at end of file
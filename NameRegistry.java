@@ -0,0 +1,78 @@
+
+/**
+ * @author Kevin Wong
+ * Single namespace shared by Users and UserGroups. Ids are checked once, when
+ * they are registered, so a user and a group can never share an id and
+ * UserTree.validateNames() does not need to revisit every entry. Safe to use
+ * from several threads.
+ */
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NameRegistry {
+    private ConcurrentHashMap<String, SysEntry> entries;
+    private AtomicInteger numInvalid = new AtomicInteger();
+
+    /**
+     * Constructor
+     */
+    public NameRegistry() {
+        entries = new ConcurrentHashMap<String, SysEntry>();
+    }
+
+    /**
+     * @param id: a User or UserGroup id
+     * @return true if id is well formed (no spaces), false otherwise
+     */
+    public static boolean isWellFormed(String id) {
+        return !id.contains(" ");
+    }
+
+    /**
+     * @param id: id to check
+     * @return true if id is already taken by a User or UserGroup
+     */
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * Claims id for entry. Ids that are not well formed are still accepted so the
+     * admin can correct them, but they are counted so validation stays O(1).
+     *
+     * @param id:    id to claim
+     * @param entry: User or UserGroup the id belongs to
+     * @return true if id was free and is now registered, false if it is taken
+     */
+    public boolean register(String id, SysEntry entry) {
+        if (entries.putIfAbsent(id, entry) != null) {
+            return false;
+        }
+        if (!isWellFormed(id)) {
+            numInvalid.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * @param id: id to look up
+     * @return the entry registered under id, or null if there is none
+     */
+    public SysEntry get(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @return true if every registered id is well formed
+     */
+    public boolean allValid() {
+        return numInvalid.get() == 0;
+    }
+
+    /**
+     * @return number of registered ids
+     */
+    public int size() {
+        return entries.size();
+    }
+}
\ No newline at end of file
@@ -3,33 +3,74 @@ import java.util.HashSet;
 
 /**
  * @author Kevin Wong
- *         Visitor responsible for validating all user/group names
+ *         Visitor responsible for validating all user/group names. Used for a
+ *         full audit of the tree; a single instance must be used for the whole
+ *         traversal so duplicates are detected.
  */
-public class NameValidatorVisitor implements SysEntryVisitor {
-    private static HashSet<String> names = new HashSet<String>();
+public class NameValidatorVisitor implements SysEntryVisitor<Boolean> {
+    private HashSet<String> names = new HashSet<String>();
+    private boolean valid = true;
 
     /**
      * @return true if name is unique from all other ids and
-     *         name doesn't contain any spaces, false otherwise
+     *         name doesn't contain any spaces, false otherwise (stops the
+     *         traversal)
      */
-    public int visit(User user) {
-        boolean unique = names.add(user.toString());
-        if (unique && !user.toString().contains(" ")) {
-            return 1;
-        }
-        return 0;
+    public boolean visit(User user) {
+        return check(user.toString());
     }
 
     /**
      * @return true if name is unique from all other ids and
-     *         name doesn't contain any spaces, false otherwise
+     *         name doesn't contain any spaces, false otherwise (stops the
+     *         traversal)
+     */
+    public boolean visit(UserGroup group) {
+        return check(group.toString());
+    }
+
+    /**
+     * @return true if every name visited so far is valid
+     */
+    public Boolean getResult() {
+        return valid;
+    }
+
+    /**
+     * @return the number of distinct names visited so far
+     */
+    public int numNames() {
+        return names.size();
+    }
+
+    public SysEntryVisitor<Boolean> fork() {
+        return new NameValidatorVisitor();
+    }
+
+    /**
+     * Names seen by both visitors are duplicates, so merging can only make the
+     * result invalid
+     */
+    public void merge(SysEntryVisitor<Boolean> other) {
+        NameValidatorVisitor fork = (NameValidatorVisitor) other;
+        valid = valid && fork.valid;
+        for (String name : fork.names) {
+            if (!names.add(name)) {
+                valid = false;
+            }
+        }
+    }
+
+    /**
+     * @param name: id of the entry being visited
+     * @return true if name is unique so far and well formed, false otherwise
      */
-    public int visit(UserGroup group) {
-        boolean unique = names.add(group.toString());
-        if (unique && !group.toString().contains(" ")) {
-            return 1;
+    private boolean check(String name) {
+        boolean unique = names.add(name);
+        if (!unique || !NameRegistry.isWellFormed(name)) {
+            valid = false;
         }
-        return 0;
+        return valid;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+
+/**
+ * @author Kevin Wong
+ * Writes ChangeEvents as newline delimited JSON, one object per line, into
+ * rotating files
+ */
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class NdjsonFileSink extends RotatingFileSink {
+    /**
+     * Constructor
+     *
+     * @param dir:      directory to write into
+     * @param prefix:   start of every file name
+     * @param maxBytes: size at which a new file is started
+     */
+    public NdjsonFileSink(File dir, String prefix, long maxBytes) {
+        super(dir, prefix, "ndjson", maxBytes);
+    }
+
+    @Override
+    protected void encode(ChangeEvent event, DataOutputStream out) throws IOException {
+        out.write(event.toJson().getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+}
\ No newline at end of file
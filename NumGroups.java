@@ -19,7 +19,7 @@ public class NumGroups implements StatType {
     /**
      * @return number of groups in tree
      */
-    public int getData() {
+    public long getData() {
         return tree.getNumGroups();
     }
 
@@ -3,20 +3,37 @@
  * @author Kevin Wong
  *         Visitor responsible for counting number of Groups
  */
-public class NumGroupsVisitor implements SysEntryVisitor {
+public class NumGroupsVisitor implements SysEntryVisitor<Long> {
+    private long count = 0;
 
     /**
-     * @return 0 if object type is a User
+     * Users are not counted
      */
-    public int visit(User user) {
-        return 0;
+    public boolean visit(User user) {
+        return true;
     }
 
     /**
-     * @return 1 if object type is a UserGroup
+     * Counts this entry, object type is a UserGroup
      */
-    public int visit(UserGroup group) {
-        return 1;
+    public boolean visit(UserGroup group) {
+        count++;
+        return true;
+    }
+
+    /**
+     * @return number of UserGroups visited
+     */
+    public Long getResult() {
+        return count;
+    }
+
+    public SysEntryVisitor<Long> fork() {
+        return new NumGroupsVisitor();
+    }
+
+    public void merge(SysEntryVisitor<Long> other) {
+        count += other.getResult();
     }
 
 }
\ No newline at end of file
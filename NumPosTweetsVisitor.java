@@ -3,42 +3,82 @@
  * @author Kevin Wong
  * Visitor responsible for counting number of positive tweets
  */
-import java.util.LinkedList;
-import java.util.ListIterator;
-
-public class NumPosTweetsVisitor implements SysEntryVisitor {
+public class NumPosTweetsVisitor implements SysEntryVisitor<Long> {
 
     // Bank of "positive" words to search for
-    private String[] goodWords = { "good", "great", "best", "happy", "haha", "lol" };
+    private static String[] goodWords = { "good", "great", "best", "happy", "haha", "lol" };
+
+    private long version;
+    private long numPos = 0;
 
     /**
-     * @return an integer value. To get percentage, divide NumPosTweetsVisitor
-     *         results
-     *         by numTweetsVisitor results.
+     * Constructor for a visitor that checks every tweet it finds
      */
-    public int visit(User user) {
-        int numPos = 0;
-        LinkedList<String> tweets = user.getTweets();
-        ListIterator<String> i = tweets.listIterator();
-        // look through all tweets for a user
-        while (i.hasNext()) {
-            String candidate = i.next().toLowerCase();
-            // check for a substring containing each "positive" word
-            for (int j = 0; j < goodWords.length; j++) {
-                if (candidate.contains(goodWords[j])) {
-                    numPos++;
-                    break;
-                }
+    public NumPosTweetsVisitor() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor for a visitor that only checks tweets posted at or before a
+     * snapshot version, see UserTree.snapshot()
+     * 
+     * @param version: snapshot version to count at
+     */
+    public NumPosTweetsVisitor(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Counts the positive tweets of this User. To get percentage, divide
+     * NumPosTweetsVisitor results by numTweetsVisitor results.
+     */
+    public boolean visit(User user) {
+        int numTweets = user.numTweets(version);
+        // flags kept at posting time, so tweets deleted since the snapshot
+        // count even if the compactor has already freed their text
+        for (int i = 0; i < numTweets; i++) {
+            if (user.isPositive(i) && !user.isDeleted(i, version)) {
+                numPos++;
             }
         }
-        return numPos;
+        return true;
+    }
+
+    /**
+     * @param tweet: message to check
+     * @return true if tweet contains any of the "positive" words
+     */
+    public static boolean isPositive(String tweet) {
+        String candidate = tweet.toLowerCase();
+        // check for a substring containing each "positive" word
+        for (int j = 0; j < goodWords.length; j++) {
+            if (candidate.contains(goodWords[j])) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * @return 0 if object type is a UserGroup
+     * Groups have no tweets of their own
      */
-    public int visit(UserGroup group) {
-        return 0;
+    public boolean visit(UserGroup group) {
+        return true;
+    }
+
+    /**
+     * @return number of positive tweets by all Users visited
+     */
+    public Long getResult() {
+        return numPos;
+    }
+
+    public SysEntryVisitor<Long> fork() {
+        return new NumPosTweetsVisitor(version);
+    }
+
+    public void merge(SysEntryVisitor<Long> other) {
+        numPos += other.getResult();
     }
 
 }
\ No newline at end of file
@@ -19,7 +19,7 @@ public class NumTweets implements StatType {
     /**
      * @return number of tweets in tree
      */
-    public int getData() {
+    public long getData() {
         return tree.getNumTweets();
     }
 
@@ -3,21 +3,56 @@
  * @author Kevin Wong
  *         Visitor responsible for counting number of tweets
  */
-public class NumTweetsVisitor implements SysEntryVisitor {
+public class NumTweetsVisitor implements SysEntryVisitor<Long> {
+    private long version;
+    private long count = 0;
 
     /**
-     * @return if object type is User, call numTweets() to count
-     *         number of tweets for this User
+     * Constructor for a visitor that counts every tweet it finds
      */
-    public int visit(User user) {
-        return user.numTweets();
+    public NumTweetsVisitor() {
+        this(Long.MAX_VALUE);
     }
 
     /**
-     * @return 0 if object type is a UserGroup
+     * Constructor for a visitor that only counts tweets posted at or before a
+     * snapshot version, see UserTree.snapshot()
+     * 
+     * @param version: snapshot version to count at
      */
-    public int visit(UserGroup group) {
-        return 0;
+    public NumTweetsVisitor(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Calls numLiveTweets() to count the tweets of this User, leaving out
+     * deleted ones
+     */
+    public boolean visit(User user) {
+        count += user.numLiveTweets(version);
+        return true;
+    }
+
+    /**
+     * Groups have no tweets of their own
+     */
+    public boolean visit(UserGroup group) {
+        return true;
+    }
+
+    /**
+     * @return number of tweets by all Users visited
+     */
+    public Long getResult() {
+        return count;
+    }
+
+    public SysEntryVisitor<Long> fork() {
+        return new NumTweetsVisitor(version);
+    }
+
+    public void merge(SysEntryVisitor<Long> other) {
+        count += other.getResult();
     }
 
 }
\ No newline at end of file
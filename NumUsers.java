@@ -19,7 +19,7 @@ public class NumUsers implements StatType {
     /**
      * @return number of users in tree
      */
-    public int getData() {
+    public long getData() {
         return tree.getNumUsers();
     }
 
@@ -3,20 +3,37 @@
  * @author Kevin Wong
  *         Visitor responsible for counting number of Users
  */
-public class NumUsersVisitor implements SysEntryVisitor {
+public class NumUsersVisitor implements SysEntryVisitor<Long> {
+    private long count = 0;
 
     /**
-     * @return 1 if object type is a User
+     * Counts this entry, object type is a User
      */
-    public int visit(User user) {
-        return 1;
+    public boolean visit(User user) {
+        count++;
+        return true;
     }
 
     /**
-     * @return 0 if object type is a UserGroup
+     * Groups are not counted
      */
-    public int visit(UserGroup group) {
-        return 0;
+    public boolean visit(UserGroup group) {
+        return true;
+    }
+
+    /**
+     * @return number of Users visited
+     */
+    public Long getResult() {
+        return count;
+    }
+
+    public SysEntryVisitor<Long> fork() {
+        return new NumUsersVisitor();
+    }
+
+    public void merge(SysEntryVisitor<Long> other) {
+        count += other.getResult();
     }
 
 }
\ No newline at end of file
@@ -5,5 +5,5 @@
  * Used for observer pattern.
  */
 public interface Observer {
-    public void update(Subject subject, String tweet);
+    public void update(Subject subject, long id, String tweet);
 }
\ No newline at end of file
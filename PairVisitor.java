@@ -0,0 +1,78 @@
+
+/**
+ * @author Kevin Wong
+ *         Visitor that runs two other visitors in a single traversal. Each
+ *         visitor stops receiving entries once it asks to stop, and the
+ *         traversal stops once both have.
+ *
+ * @param <A> result type of the first visitor
+ * @param <B> result type of the second visitor
+ */
+public class PairVisitor<A, B> implements SysEntryVisitor<PairVisitor<A, B>> {
+    private SysEntryVisitor<A> first;
+    private SysEntryVisitor<B> second;
+    private boolean firstActive = true;
+    private boolean secondActive = true;
+
+    /**
+     * Constructor
+     *
+     * @param first:  visitor to run
+     * @param second: visitor to run alongside first
+     */
+    public PairVisitor(SysEntryVisitor<A> first, SysEntryVisitor<B> second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public boolean visit(User user) {
+        if (firstActive) {
+            firstActive = first.visit(user);
+        }
+        if (secondActive) {
+            secondActive = second.visit(user);
+        }
+        return firstActive || secondActive;
+    }
+
+    public boolean visit(UserGroup group) {
+        if (firstActive) {
+            firstActive = first.visit(group);
+        }
+        if (secondActive) {
+            secondActive = second.visit(group);
+        }
+        return firstActive || secondActive;
+    }
+
+    /**
+     * @return this visitor, use getFirst() and getSecond() for the results
+     */
+    public PairVisitor<A, B> getResult() {
+        return this;
+    }
+
+    /**
+     * @return result of the first visitor
+     */
+    public A getFirst() {
+        return first.getResult();
+    }
+
+    /**
+     * @return result of the second visitor
+     */
+    public B getSecond() {
+        return second.getResult();
+    }
+
+    public SysEntryVisitor<PairVisitor<A, B>> fork() {
+        return new PairVisitor<A, B>(first.fork(), second.fork());
+    }
+
+    public void merge(SysEntryVisitor<PairVisitor<A, B>> other) {
+        PairVisitor<A, B> fork = other.getResult();
+        first.merge(fork.first);
+        second.merge(fork.second);
+    }
+}
\ No newline at end of file
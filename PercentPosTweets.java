@@ -19,7 +19,7 @@ public class PercentPosTweets implements StatType {
     /**
      * @return integer value of percentage of tweets that are positive
      */
-    public int getData() {
+    public long getData() {
         return tree.percentGoodTweets();
     }
 
@@ -0,0 +1,104 @@
+
+/**
+ * @author Kevin Wong
+ * Token bucket admission control for one kind of action, such as posting a
+ * tweet. Every user has a bucket that refills at a steady rate up to a burst
+ * size, and all users share a global bucket on top of that, so one busy client
+ * cannot use up the capacity meant for everyone else. Buckets are kept in
+ * primitive arrays indexed by User.getIndex(), 12 bytes per user, instead of
+ * an object per user.
+ */
+import java.util.Arrays;
+
+public class RateLimiter {
+    // token counts are kept in thousandths of a token
+    private static final int SCALE = 1000;
+
+    private long userRefillNanos;
+    private int userBurst;
+    private long globalRefillNanos;
+    private int globalBurst;
+    private int[] tokens;
+    private long[] refilled;
+    private int globalTokens;
+    private long globalRefilled;
+
+    /**
+     * Constructor
+     *
+     * @param userRate:    actions per second each user may sustain
+     * @param userBurst:   actions a user may take at once after being idle
+     * @param globalRate:  actions per second all users together may sustain
+     * @param globalBurst: actions all users together may take at once
+     */
+    public RateLimiter(double userRate, int userBurst, double globalRate, int globalBurst) {
+        tokens = new int[64];
+        refilled = new long[64];
+        Arrays.fill(tokens, -1); // -1 marks a bucket that has not been used yet
+        setLimits(userRate, userBurst, globalRate, globalBurst);
+        globalTokens = globalBurst * SCALE;
+        globalRefilled = System.nanoTime();
+    }
+
+    /**
+     * Changes the limits. Buckets keep their current tokens, capped at the new
+     * burst sizes.
+     *
+     * @param userRate:    actions per second each user may sustain
+     * @param userBurst:   actions a user may take at once after being idle
+     * @param globalRate:  actions per second all users together may sustain
+     * @param globalBurst: actions all users together may take at once
+     */
+    public synchronized void setLimits(double userRate, int userBurst, double globalRate, int globalBurst) {
+        if (userRate <= 0 || userBurst < 1 || globalRate <= 0 || globalBurst < 1) {
+            throw new IllegalArgumentException("rates must be positive and bursts at least 1");
+        }
+        this.userRefillNanos = Math.max(1, (long) (1e9 / userRate / SCALE));
+        this.userBurst = userBurst;
+        this.globalRefillNanos = Math.max(1, (long) (1e9 / globalRate / SCALE));
+        this.globalBurst = globalBurst;
+        globalTokens = Math.min(globalTokens, globalBurst * SCALE);
+    }
+
+    /**
+     * Takes one token from the user's bucket and one from the global bucket.
+     * Nothing is taken unless both have a token.
+     *
+     * @param index: User.getIndex() of the acting user, not negative
+     * @return true if the action may go ahead, false if it is rejected
+     */
+    public synchronized boolean tryAcquire(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("user index " + index + " has no bucket");
+        }
+        long now = System.nanoTime();
+        if (index >= tokens.length) {
+            int length = Math.max(tokens.length * 2, index + 1);
+            int old = tokens.length;
+            tokens = Arrays.copyOf(tokens, length);
+            refilled = Arrays.copyOf(refilled, length);
+            Arrays.fill(tokens, old, length, -1);
+        }
+        if (tokens[index] < 0) {
+            tokens[index] = userBurst * SCALE;
+            refilled[index] = now;
+        }
+        long elapsed = now - refilled[index];
+        long earned = Math.min(elapsed / userRefillNanos, (long) userBurst * SCALE);
+        int user = (int) Math.min(tokens[index] + earned, (long) userBurst * SCALE);
+        refilled[index] = user == userBurst * SCALE ? now : refilled[index] + earned * userRefillNanos;
+        tokens[index] = user;
+
+        elapsed = now - globalRefilled;
+        earned = Math.min(elapsed / globalRefillNanos, (long) globalBurst * SCALE);
+        globalTokens = (int) Math.min(globalTokens + earned, (long) globalBurst * SCALE);
+        globalRefilled = globalTokens == globalBurst * SCALE ? now : globalRefilled + earned * globalRefillNanos;
+
+        if (user < SCALE || globalTokens < SCALE) {
+            return false;
+        }
+        tokens[index] -= SCALE;
+        globalTokens -= SCALE;
+        return true;
+    }
+}
\ No newline at end of file
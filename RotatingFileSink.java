@@ -0,0 +1,111 @@
+
+/**
+ * @author Kevin Wong
+ * EventSink writing to numbered files, prefix-0.ext, prefix-1.ext and so on,
+ * starting a new file once the current one reaches a size limit. Files are
+ * only rotated between batches and flushed after every batch. Subclasses
+ * choose how an event is encoded.
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public abstract class RotatingFileSink implements EventSink {
+    private File dir;
+    private String prefix;
+    private String extension;
+    private long maxBytes;
+    private int fileNumber = 0;
+    private DataOutputStream out;
+    // bytes written to the current file, DataOutputStream.size() stops
+    // counting at Integer.MAX_VALUE
+    private CountingStream counter;
+
+    /**
+     * Constructor
+     *
+     * @param dir:       directory to write into, created if missing
+     * @param prefix:    start of every file name
+     * @param extension: end of every file name, without the dot
+     * @param maxBytes:  size at which a new file is started
+     */
+    protected RotatingFileSink(File dir, String prefix, String extension, long maxBytes) {
+        this.dir = dir;
+        this.prefix = prefix;
+        this.extension = extension;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param event: event to encode
+     * @param out:   stream of the current file
+     */
+    protected abstract void encode(ChangeEvent event, DataOutputStream out) throws IOException;
+
+    public synchronized void write(List<ChangeEvent> batch) throws IOException {
+        if (out == null || counter.count >= maxBytes) {
+            rotate();
+        }
+        for (ChangeEvent event : batch) {
+            encode(event, out);
+        }
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * @return the file currently written to, or null before the first batch
+     */
+    public synchronized File getCurrentFile() {
+        return out == null ? null : file(fileNumber - 1);
+    }
+
+    private void rotate() throws IOException {
+        close();
+        dir.mkdirs();
+        // skip numbers used by earlier runs
+        while (file(fileNumber).exists()) {
+            fileNumber++;
+        }
+        counter = new CountingStream(new BufferedOutputStream(new FileOutputStream(file(fileNumber++))));
+        out = new DataOutputStream(counter);
+    }
+
+    private File file(int number) {
+        return new File(dir, prefix + "-" + number + "." + extension);
+    }
+
+    /**
+     * Passes bytes through, counting them in a long
+     */
+    private static class CountingStream extends FilterOutputStream {
+        private long count = 0;
+
+        private CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
\ No newline at end of file
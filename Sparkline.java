@@ -0,0 +1,60 @@
+
+/**
+ * @author Kevin Wong
+ * Small line chart of one StatsSampler series with its label and latest value
+ */
+import java.awt.Color;
+import java.awt.Graphics;
+
+import javax.swing.JComponent;
+
+public class Sparkline extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private String label;
+    private StatsSampler.Series series;
+
+    /**
+     * Constructor
+     *
+     * @param label:  name of the statistic
+     * @param series: values to draw
+     */
+    public Sparkline(String label, StatsSampler.Series series) {
+        this.label = label;
+        this.series = series;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        double[] values = series.values();
+        int width = getWidth();
+        int height = getHeight();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.DARK_GRAY);
+        String latest = values.length == 0 ? "-" : String.format("%.1f", values[values.length - 1]);
+        g.drawString(label + ": " + latest, 4, 14);
+        if (values.length < 2) {
+            return;
+        }
+        double min = values[0];
+        double max = values[0];
+        for (double v : values) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        double range = max > min ? max - min : 1;
+        int top = 20;
+        int plotHeight = height - top - 4;
+        int step = (width - 8) / (StatsSampler.HISTORY - 1);
+        g.setColor(Color.BLUE);
+        for (int i = 1; i < values.length; i++) {
+            int x0 = 4 + (i - 1) * step;
+            int y0 = top + (int) ((max - values[i - 1]) / range * plotHeight);
+            int x1 = 4 + i * step;
+            int y1 = top + (int) ((max - values[i]) / range * plotHeight);
+            g.drawLine(x0, y0, x1, y1);
+        }
+    }
+}
\ No newline at end of file
@@ -5,5 +5,5 @@
  *         citizen.
  */
 public interface StatType {
-    public int getData();
+    public long getData();
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+
+/**
+ * @author Kevin Wong
+ * Samples the statistics of a UserTree in the background at a fixed interval
+ * and keeps the most recent samples of each as a time series. The statistics
+ * are computed on a worker thread, never on the caller's thread, and a tick is
+ * skipped if the previous sample is still being computed so a slow sample
+ * cannot pile up work behind it.
+ */
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class StatsSampler {
+    // number of samples kept per series
+    public static final int HISTORY = 60;
+
+    private StatType users;
+    private StatType tweets;
+    private StatType positive;
+    private Series userSeries = new Series();
+    private Series tweetRateSeries = new Series();
+    private Series positiveSeries = new Series();
+    private volatile Runnable onSample;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService worker;
+    private ScheduledFuture<?> ticks;
+    private AtomicBoolean sampling = new AtomicBoolean();
+    private volatile long skipped = 0;
+    private long lastTweets = -1;
+    private long lastTime;
+
+    /**
+     * Constructor
+     *
+     * @param tree: tree to sample
+     */
+    public StatsSampler(UserTree tree) {
+        users = tree.cached(new NumUsers(tree));
+        tweets = tree.cached(new NumTweets(tree));
+        positive = tree.cached(new PercentPosTweets(tree));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "stats-scheduler"));
+        worker = Executors.newSingleThreadExecutor(r -> daemon(r, "stats-worker"));
+    }
+
+    /**
+     * Starts sampling, or changes the interval if already started
+     *
+     * @param intervalMillis: time between samples
+     */
+    public synchronized void start(long intervalMillis) {
+        if (ticks != null) {
+            ticks.cancel(false);
+        }
+        ticks = scheduler.scheduleAtFixedRate(this::tick, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param onSample: called on the worker thread after every sample, may be
+     *                  null
+     */
+    public void setOnSample(Runnable onSample) {
+        this.onSample = onSample;
+    }
+
+    /**
+     * Stops sampling for good and releases the threads
+     */
+    public synchronized void stop() {
+        scheduler.shutdownNow();
+        worker.shutdownNow();
+    }
+
+    /**
+     * @return number of users at each sample, oldest first
+     */
+    public Series getUsers() {
+        return userSeries;
+    }
+
+    /**
+     * @return tweets posted per second between samples, oldest first
+     */
+    public Series getTweetRate() {
+        return tweetRateSeries;
+    }
+
+    /**
+     * @return percentage of positive tweets at each sample, oldest first
+     */
+    public Series getPositivePercent() {
+        return positiveSeries;
+    }
+
+    /**
+     * @return number of ticks skipped because a sample was still running
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Hands a sample to the worker unless the last one has not finished
+     */
+    private void tick() {
+        if (!sampling.compareAndSet(false, true)) {
+            skipped++; // only the scheduler thread writes this
+            return;
+        }
+        worker.execute(() -> {
+            try {
+                sample();
+            } finally {
+                sampling.set(false);
+            }
+        });
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        long numTweets = tweets.getData();
+        userSeries.add(users.getData());
+        if (lastTweets >= 0) {
+            tweetRateSeries.add((numTweets - lastTweets) * 1e9 / (now - lastTime));
+        }
+        lastTweets = numTweets;
+        lastTime = now;
+        positiveSeries.add(positive.getData());
+        Runnable listener = onSample;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * @author Kevin Wong
+     *         Ring of the last HISTORY values of one statistic
+     */
+    public static class Series {
+        private double[] values = new double[HISTORY];
+        private int start = 0;
+        private int size = 0;
+
+        private synchronized void add(double value) {
+            if (size < values.length) {
+                values[(start + size++) % values.length] = value;
+            } else {
+                values[start] = value;
+                start = (start + 1) % values.length;
+            }
+        }
+
+        /**
+         * @return copy of the values, oldest first
+         */
+        public synchronized double[] values() {
+            double[] copy = new double[size];
+            for (int i = 0; i < size; i++) {
+                copy[i] = values[(start + i) % values.length];
+            }
+            return copy;
+        }
+    }
+}
\ No newline at end of file
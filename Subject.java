@@ -3,7 +3,9 @@
  * @author Kevin Wong
  * Used in observer pattern in order to handle notifying a list of followers
  */
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 public class Subject {
     // list of followers for a given user
@@ -12,16 +14,25 @@ public class Subject {
     /**
      * @param follower: the User wanting to follow this Subject
      */
-    public void attach(Observer follower) {
+    public synchronized void attach(Observer follower) {
         followers.add(follower);
     }
 
     /**
+     * @return copy of the followers of this Subject, safe to iterate while
+     *         others follow
+     */
+    public synchronized List<Observer> getFollowers() {
+        return new ArrayList<Observer>(followers);
+    }
+
+    /**
+     * @param id:    id of the tweet
      * @param tweet: the tweet to be delivered to all followers
      */
-    public void notifyObservers(String tweet) {
-        for (Observer follower : followers) {
-            follower.update(this, tweet);
+    public void notifyObservers(long id, String tweet) {
+        for (Observer follower : getFollowers()) {
+            follower.update(this, id, tweet);
         }
     }
 }
\ No newline at end of file
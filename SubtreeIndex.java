@@ -0,0 +1,247 @@
+
+/**
+ * @author Kevin Wong
+ * Euler-tour index over a UserTree. Every entry is numbered in depth first
+ * order, so the subtree of a group is exactly the range of numbers between its
+ * enter and exit index. This makes "is X under G" an O(1) comparison, and a
+ * Fenwick tree of tweet counts over the same ordering answers "tweets posted
+ * under G" in O(log n).
+ *
+ * New entries are not numbered straight away. They wait in a pending list,
+ * answered by walking their parent chain, until enough have built up to make a
+ * full renumbering worthwhile, which keeps insertion amortized O(1).
+ */
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SubtreeIndex implements TreeListener {
+    // smallest number of pending entries that triggers a rebuild
+    private static final int MIN_PENDING = 64;
+
+    private UserGroup root;
+    private IdentityHashMap<SysEntry, Integer> enter;
+    private int[] exit;
+    private AtomicLongArray fenwick;
+    private ArrayList<SysEntry> pending;
+    // version the tweet counts were loaded at by the last rebuild
+    private long builtAt;
+    // posts and deletions only share the lock, so they run side by side and
+    // only wait for a rebuild or a new entry
+    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor
+     *
+     * @param root: root group of the tree to index
+     */
+    public SubtreeIndex(UserGroup root) {
+        this.root = root;
+        pending = new ArrayList<SysEntry>();
+        rebuild();
+    }
+
+    @Override
+    public void userAdded(User user) {
+        addPending(user);
+    }
+
+    @Override
+    public void groupAdded(UserGroup group) {
+        addPending(group);
+    }
+
+    /**
+     * Counts the tweet unless the last rebuild already loaded it
+     */
+    @Override
+    public void tweetPosted(User author, long id, String tweet, long time) {
+        lock.readLock().lock();
+        try {
+            Integer pos = enter.get(author);
+            // pending users are counted from User.numLiveTweets() until the next
+            // rebuild
+            int i = author.indexOfTweet(id);
+            if (pos != null && i >= 0 && author.getTweetVersion(i) > builtAt) {
+                add(pos, 1);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Uncounts the tweet unless the last rebuild already left it out
+     */
+    @Override
+    public void tweetDeleted(User author, long id) {
+        lock.readLock().lock();
+        try {
+            Integer pos = enter.get(author);
+            int i = author.indexOfTweet(id);
+            if (pos != null && i >= 0 && author.getDeletionVersion(i) > builtAt) {
+                add(pos, -1);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param entry: any User or UserGroup in the tree
+     * @param group: group whose subtree to check
+     * @return true if entry is group or anywhere below it
+     */
+    public boolean isUnder(SysEntry entry, UserGroup group) {
+        lock.readLock().lock();
+        try {
+            Integer e = enter.get(entry);
+            Integer g = enter.get(group);
+            if (e == null || g == null) {
+                return isUnderByParents(entry, group);
+            }
+            return g <= e && e <= exit[g];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param group: group whose subtree to sum
+     * @return number of tweets posted by users anywhere under group, not
+     *         counting deleted ones
+     */
+    public long tweetsUnder(UserGroup group) {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            Integer g = enter.get(group);
+            if (g != null) {
+                total = prefixSum(exit[g]) - prefixSum(g - 1);
+            }
+            for (SysEntry entry : pending) {
+                if (entry instanceof User && isUnderByParents(entry, group)) {
+                    total += ((User) entry).numLiveTweets();
+                }
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Renumbers the whole tree and reloads the tweet counts as of the current
+     * version. Posts and deletions stamped after that version are left to the
+     * listener methods, earlier ones are skipped by them, so none is counted
+     * twice. Uses an explicit stack so deep trees cannot overflow the call
+     * stack.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            rebuildLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuildLocked() {
+        long version = root.getClock().current();
+        ArrayList<SysEntry> order = new ArrayList<SysEntry>();
+        enter = new IdentityHashMap<SysEntry, Integer>();
+        ArrayList<UserGroup> groupStack = new ArrayList<UserGroup>();
+        ArrayList<Integer> childStack = new ArrayList<Integer>();
+        ArrayList<Integer> exits = new ArrayList<Integer>();
+
+        enter.put(root, 0);
+        order.add(root);
+        exits.add(0);
+        groupStack.add(root);
+        childStack.add(0);
+        while (!groupStack.isEmpty()) {
+            int top = groupStack.size() - 1;
+            UserGroup group = groupStack.get(top);
+            int next = childStack.get(top);
+            if (next == group.getChildCount()) {
+                // every descendant is numbered, so the group's range ends here
+                exits.set(enter.get(group), order.size() - 1);
+                groupStack.remove(top);
+                childStack.remove(top);
+                continue;
+            }
+            childStack.set(top, next + 1);
+            SysEntry child = group.getChildAt(next);
+            enter.put(child, order.size());
+            order.add(child);
+            exits.add(order.size() - 1);
+            if (child instanceof UserGroup) {
+                groupStack.add((UserGroup) child);
+                childStack.add(0);
+            }
+        }
+
+        exit = new int[order.size()];
+        fenwick = new AtomicLongArray(order.size() + 1);
+        for (int i = 0; i < exit.length; i++) {
+            exit[i] = exits.get(i);
+            if (order.get(i) instanceof User) {
+                add(i, ((User) order.get(i)).numLiveTweets(version));
+            }
+        }
+        builtAt = version;
+        // every pending entry was in the tree before it was announced, so the
+        // walk above has numbered it
+        pending.clear();
+    }
+
+    /**
+     * Queues a new entry, rebuilding once the queue outgrows a fraction of the
+     * tree so the cost of each rebuild is spread over many insertions
+     */
+    private void addPending(SysEntry entry) {
+        lock.writeLock().lock();
+        try {
+            if (enter.containsKey(entry)) {
+                return; // numbered by a rebuild that ran before it was announced
+            }
+            pending.add(entry);
+            if (pending.size() >= Math.max(MIN_PENDING, exit.length / 8)) {
+                rebuildLocked();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Fallback for entries that have not been numbered yet, O(depth)
+     */
+    private static boolean isUnderByParents(SysEntry entry, UserGroup group) {
+        UserGroup g = entry instanceof User ? ((User) entry).getGroup() : (UserGroup) entry;
+        for (; g != null; g = g.getParent()) {
+            if (g == group) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(int pos, long delta) {
+        for (int i = pos + 1; i < fenwick.length(); i += i & -i) {
+            fenwick.addAndGet(i, delta);
+        }
+    }
+
+    /**
+     * @return sum of tweet counts at positions 0 through pos
+     */
+    private long prefixSum(int pos) {
+        long sum = 0;
+        for (int i = pos + 1; i > 0; i -= i & -i) {
+            sum += fenwick.get(i);
+        }
+        return sum;
+    }
+}
\ No newline at end of file
@@ -9,4 +9,10 @@ public interface SysEntry extends Visitable {
     public long getCreationTime();
 
     public String getPrettyCreationTime();
+
+    /**
+     * @return estimated bytes held by this entry and everything under it, see
+     *         MemoryMeter
+     */
+    public long getRetainedBytes();
 }
\ No newline at end of file
@@ -2,10 +2,38 @@
 /**
  * @author Kevin Wong
  *         Interface to make sure all visitors are able to process
- *         User and UserGroup objects
+ *         User and UserGroup objects. Visitors accumulate their result
+ *         internally as they go, so no values are allocated per entry, and
+ *         can stop a traversal early by returning false from visit().
+ * 
+ * @param <R> type of the result produced once the traversal is done
  */
-public interface SysEntryVisitor {
-    public int visit(User user);
+public interface SysEntryVisitor<R> {
+    /**
+     * @return true to continue the traversal, false to stop it
+     */
+    public boolean visit(User user);
 
-    public int visit(UserGroup group);
+    /**
+     * @return true to continue the traversal, false to stop it
+     */
+    public boolean visit(UserGroup group);
+
+    /**
+     * @return the result accumulated from every entry visited so far
+     */
+    public R getResult();
+
+    /**
+     * Used to run a visitor in parallel: each part of the tree is visited by its
+     * own fork, and the forks are merged back together afterwards
+     * 
+     * @return a new visitor of the same kind with nothing accumulated
+     */
+    public SysEntryVisitor<R> fork();
+
+    /**
+     * @param other: a fork of this visitor, whose results are added to this one
+     */
+    public void merge(SysEntryVisitor<R> other);
 }
\ No newline at end of file
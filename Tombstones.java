@@ -0,0 +1,90 @@
+
+/**
+ * @author Kevin Wong
+ * Record of tweets deleted in a UserTree. Deleting a tweet only marks it in
+ * its author (see User.deleteTweet()) and adds it here, which costs the same
+ * however many followers got a copy. Feeds hide deleted tweets when they are
+ * next read, and a TweetCompactor takes the deletions from here in batches to
+ * reclaim what they used.
+ *
+ * Feeds that are on screen watch this record, so they refresh as soon as a
+ * tweet is deleted instead of waiting for their next new tweet.
+ */
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class Tombstones {
+    private ConcurrentLinkedQueue<Tombstone> pending;
+    private CopyOnWriteArrayList<FeedBus> watching;
+
+    /**
+     * Constructor
+     */
+    public Tombstones() {
+        pending = new ConcurrentLinkedQueue<Tombstone>();
+        watching = new CopyOnWriteArrayList<FeedBus>();
+    }
+
+    /**
+     * Records a deletion and tells the watching feeds to drop it
+     *
+     * @param author: the User whose tweet was deleted
+     * @param id:     id of the deleted tweet
+     */
+    public void add(User author, long id) {
+        pending.add(new Tombstone(author, id));
+        for (FeedBus feed : watching) {
+            feed.tweetDeleted(id);
+        }
+    }
+
+    /**
+     * @return the oldest deletion not yet compacted, or null if there is none
+     */
+    public Tombstone poll() {
+        return pending.poll();
+    }
+
+    /**
+     * @return number of deletions not yet compacted
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * @param feed: feed to tell about every deletion
+     */
+    public void watch(FeedBus feed) {
+        watching.addIfAbsent(feed);
+    }
+
+    /**
+     * @param feed: feed passed to watch()
+     */
+    public void unwatch(FeedBus feed) {
+        watching.remove(feed);
+    }
+
+    /**
+     * @author Kevin Wong
+     *         A deleted tweet waiting to be compacted
+     */
+    public static class Tombstone {
+        private User author;
+        private long id;
+
+        private Tombstone(User author, long id) {
+            this.author = author;
+            this.id = id;
+        }
+
+        public User getAuthor() {
+            return author;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+
+/**
+ * @author Kevin Wong
+ * Interface for anything that needs to follow activity in a UserTree.
+ * Listeners are registered with UserTree.addTreeListener() and notified as the
+ * model changes. Used for observer pattern.
+ */
+public interface TreeListener {
+    /**
+     * Called after a User has been added to the tree
+     *
+     * @param user: the new User
+     */
+    public default void userAdded(User user) {
+    }
+
+    /**
+     * Called after a UserGroup has been added to the tree
+     *
+     * @param group: the new UserGroup
+     */
+    public default void groupAdded(UserGroup group) {
+    }
+
+    /**
+     * Called after a User has started following another User
+     *
+     * @param follower: the User that followed
+     * @param followee: the User being followed
+     */
+    public default void followed(User follower, User followee) {
+    }
+
+    /**
+     * Called after a User has posted a tweet
+     *
+     * @param author: the User that posted
+     * @param id:     id of the new tweet
+     * @param tweet:  the message that was posted
+     * @param time:   time the tweet was posted
+     */
+    public default void tweetPosted(User author, long id, String tweet, long time) {
+    }
+
+    /**
+     * Called after a User has deleted one of its tweets
+     *
+     * @param author: the User that deleted the tweet
+     * @param id:     id of the deleted tweet
+     */
+    public default void tweetDeleted(User author, long id) {
+    }
+}
\ No newline at end of file
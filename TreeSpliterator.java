@@ -0,0 +1,164 @@
+
+/**
+ * @author Kevin Wong
+ * Spliterator that walks a UserGroup composite depth first without copying it
+ * into a list. Uses an explicit stack of child ranges, so deep trees cannot
+ * overflow the call stack, and splits by handing half of the remaining
+ * children of the shallowest group to a new spliterator so parallel streams
+ * can share the work.
+ */
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class TreeSpliterator implements Spliterator<SysEntry> {
+    private SysEntry first;
+    private boolean descend = true;
+    private long version;
+    private ArrayList<Frame> stack;
+    private long estimate;
+
+    /**
+     * Constructor for a spliterator over root and everything below it
+     *
+     * @param root: group to start from
+     */
+    public TreeSpliterator(UserGroup root) {
+        this(root, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor for a spliterator over root and everything below it as of a
+     * snapshot version. Entries added after the snapshot are not visited.
+     *
+     * @param root:    group to start from
+     * @param version: snapshot version from the tree's VersionClock
+     */
+    public TreeSpliterator(UserGroup root, long version) {
+        this.version = version;
+        first = root;
+        stack = new ArrayList<Frame>();
+        estimate = root.getNumUsers() + root.getNumGroups();
+    }
+
+    /**
+     * Constructor for a spliterator over a single entry, not its children
+     */
+    private TreeSpliterator(SysEntry single, long version) {
+        this.version = version;
+        first = single;
+        descend = false;
+        stack = new ArrayList<Frame>();
+        estimate = 1;
+    }
+
+    /**
+     * Constructor for a spliterator over part of the children of a group
+     */
+    private TreeSpliterator(Frame frame, long estimate, long version) {
+        this.version = version;
+        stack = new ArrayList<Frame>();
+        stack.add(frame);
+        this.estimate = estimate;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super SysEntry> action) {
+        SysEntry next = next();
+        if (next == null) {
+            return false;
+        }
+        action.accept(next);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super SysEntry> action) {
+        for (SysEntry next = next(); next != null; next = next()) {
+            action.accept(next);
+        }
+    }
+
+    @Override
+    public Spliterator<SysEntry> trySplit() {
+        if (first != null && descend) {
+            // hand off the root itself and keep its children to split later
+            TreeSpliterator single = new TreeSpliterator(first, version);
+            enter(first);
+            first = null;
+            estimate = Math.max(estimate - 1, 0);
+            return single;
+        }
+        for (int i = 0; i < stack.size(); i++) {
+            Frame frame = stack.get(i);
+            if (frame.end - frame.next >= 2) {
+                int mid = frame.next + (frame.end - frame.next) / 2;
+                Frame half = new Frame(frame.group, mid, frame.end);
+                frame.end = mid;
+                estimate = estimate / 2;
+                return new TreeSpliterator(half, estimate, version);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL;
+    }
+
+    /**
+     * @return the next entry in depth first order, or null when done
+     */
+    private SysEntry next() {
+        if (first != null) {
+            SysEntry result = first;
+            first = null;
+            if (descend) {
+                enter(result);
+            }
+            return result;
+        }
+        while (!stack.isEmpty()) {
+            Frame top = stack.get(stack.size() - 1);
+            if (top.next >= top.end) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            SysEntry child = top.group.getChildAt(top.next++);
+            enter(child);
+            return child;
+        }
+        return null;
+    }
+
+    /**
+     * Pushes the children of entry, if it is a group, to be visited next
+     */
+    private void enter(SysEntry entry) {
+        if (entry instanceof UserGroup) {
+            UserGroup group = (UserGroup) entry;
+            stack.add(new Frame(group, 0, group.getChildCount(version)));
+        }
+    }
+
+    /**
+     * Range of children of a group still to be visited
+     */
+    private static class Frame {
+        private UserGroup group;
+        private int next;
+        private int end;
+
+        private Frame(UserGroup group, int next, int end) {
+            this.group = group;
+            this.next = next;
+            this.end = end;
+        }
+    }
+}
\ No newline at end of file
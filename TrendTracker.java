@@ -0,0 +1,188 @@
+
+/**
+ * @author Kevin Wong
+ * Tracks trending #hashtags and @mentions over sliding windows of the last
+ * minute, hour and day. Each window is a ring of time buckets and each bucket
+ * is a Space-Saving summary holding a fixed number of counters, so memory does
+ * not grow with the number of tweets or distinct tags.
+ */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TrendTracker {
+    // number of counters kept per time bucket
+    public static final int COUNTERS_PER_BUCKET = 50;
+
+    /**
+     * Supported sliding windows, described by bucket length and bucket count
+     */
+    public enum Window {
+        MINUTE(10 * 1000L, 6), HOUR(5 * 60 * 1000L, 12), DAY(60 * 60 * 1000L, 24);
+
+        private long bucketMillis;
+        private int numBuckets;
+
+        Window(long bucketMillis, int numBuckets) {
+            this.bucketMillis = bucketMillis;
+            this.numBuckets = numBuckets;
+        }
+    }
+
+    private SlidingWindow[] windows;
+
+    /**
+     * Constructor
+     */
+    public TrendTracker() {
+        Window[] all = Window.values();
+        windows = new SlidingWindow[all.length];
+        for (int i = 0; i < all.length; i++) {
+            windows[i] = new SlidingWindow(all[i]);
+        }
+    }
+
+    /**
+     * @param tags: tags to count
+     * @param time: time the tags were posted
+     */
+    public synchronized void record(List<String> tags, long time) {
+        for (int i = 0; i < windows.length; i++) {
+            for (String tag : tags) {
+                windows[i].add(tag, time);
+            }
+        }
+    }
+
+    /**
+     * @param window: window to report on
+     * @param k:      number of tags to return
+     * @param now:    end of the window
+     * @return up to k tags with their estimated counts, most frequent first
+     */
+    public synchronized List<Map.Entry<String, Long>> top(Window window, int k, long now) {
+        HashMap<String, Long> merged = windows[window.ordinal()].merge(now);
+        ArrayList<Map.Entry<String, Long>> sorted = new ArrayList<Map.Entry<String, Long>>(merged.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        if (sorted.size() > k) {
+            return new ArrayList<Map.Entry<String, Long>>(sorted.subList(0, k));
+        }
+        return sorted;
+    }
+
+    /**
+     * @param tweet: message to scan
+     * @return every #hashtag and @mention in tweet, lower case, with the marker
+     */
+    public static List<String> extractTags(String tweet) {
+        ArrayList<String> tags = new ArrayList<String>();
+        int i = 0;
+        while (i < tweet.length()) {
+            char c = tweet.charAt(i);
+            if ((c == '#' || c == '@') && (i == 0 || !Character.isLetterOrDigit(tweet.charAt(i - 1)))) {
+                int end = i + 1;
+                while (end < tweet.length()
+                        && (Character.isLetterOrDigit(tweet.charAt(end)) || tweet.charAt(end) == '_')) {
+                    end++;
+                }
+                if (end > i + 1) {
+                    tags.add(tweet.substring(i, end).toLowerCase());
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Ring of Space-Saving buckets. A bucket is reused once its slot comes round
+     * again, which drops the counts that have slid out of the window.
+     */
+    private static class SlidingWindow {
+        private Window window;
+        private SpaceSaving[] buckets;
+        private long[] bucketIds;
+
+        private SlidingWindow(Window window) {
+            this.window = window;
+            buckets = new SpaceSaving[window.numBuckets];
+            bucketIds = new long[window.numBuckets];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new SpaceSaving(COUNTERS_PER_BUCKET);
+                bucketIds[i] = -1;
+            }
+        }
+
+        private void add(String tag, long time) {
+            long id = time / window.bucketMillis;
+            int slot = (int) (id % buckets.length);
+            if (bucketIds[slot] != id) {
+                if (bucketIds[slot] > id) {
+                    return; // too old to still be in the window
+                }
+                buckets[slot].clear();
+                bucketIds[slot] = id;
+            }
+            buckets[slot].add(tag);
+        }
+
+        private HashMap<String, Long> merge(long now) {
+            long newest = now / window.bucketMillis;
+            HashMap<String, Long> merged = new HashMap<String, Long>();
+            for (int i = 0; i < buckets.length; i++) {
+                if (bucketIds[i] > newest - buckets.length && bucketIds[i] <= newest) {
+                    buckets[i].addTo(merged);
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Space-Saving heavy hitters summary. When all counters are taken, a new tag
+     * replaces the smallest counter and inherits its count, so any tag whose
+     * true count exceeds total / capacity is guaranteed to be kept.
+     */
+    private static class SpaceSaving {
+        private int capacity;
+        private HashMap<String, Long> counts;
+
+        private SpaceSaving(int capacity) {
+            this.capacity = capacity;
+            counts = new HashMap<String, Long>();
+        }
+
+        private void add(String tag) {
+            Long count = counts.get(tag);
+            if (count != null) {
+                counts.put(tag, count + 1);
+            } else if (counts.size() < capacity) {
+                counts.put(tag, 1L);
+            } else {
+                String minTag = null;
+                long min = Long.MAX_VALUE;
+                for (Map.Entry<String, Long> e : counts.entrySet()) {
+                    if (e.getValue() < min) {
+                        min = e.getValue();
+                        minTag = e.getKey();
+                    }
+                }
+                counts.remove(minTag);
+                counts.put(tag, min + 1);
+            }
+        }
+
+        private void addTo(HashMap<String, Long> merged) {
+            for (Map.Entry<String, Long> e : counts.entrySet()) {
+                merged.merge(e.getKey(), e.getValue(), Long::sum);
+            }
+        }
+
+        private void clear() {
+            counts.clear();
+        }
+    }
+}
\ No newline at end of file
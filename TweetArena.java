@@ -0,0 +1,283 @@
+
+/**
+ * @author Kevin Wong
+ * Off-heap storage for tweet text. Tweets are encoded as UTF-8 into large
+ * direct ByteBuffer segments, so millions of tweets cost the garbage collector
+ * a handful of objects instead of millions of Strings. Users only keep an int
+ * handle per tweet. Handles index a slot table of segment/offset pairs, which
+ * lets compact() move tweets between segments without the owners noticing.
+ *
+ * Reads share a read lock, so any number of threads decode tweets at once. Only store(), free() and compact() are exclusive.
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class TweetArena {
+    // size of each off-heap segment in bytes
+    public static final int SEGMENT_SIZE = 1 << 20;
+
+    private static TweetArena shared;
+
+    private ArrayList<ByteBuffer> segments;
+    private int[] deadBytes;
+    private int current;
+    // slot table: handle -> segment and offset of the length-prefixed bytes
+    private int[] slotSegment;
+    private int[] slotOffset;
+    private int numSlots = 0;
+    private int[] freeSlots;
+    private int numFree = 0;
+    private long liveBytes = 0;
+    private Lock readLock;
+    private Lock writeLock;
+
+    /**
+     * Constructor
+     */
+    public TweetArena() {
+        segments = new ArrayList<ByteBuffer>();
+        deadBytes = new int[4];
+        slotSegment = new int[1024];
+        slotOffset = new int[1024];
+        freeSlots = new int[16];
+        segments.add(ByteBuffer.allocateDirect(SEGMENT_SIZE));
+        current = 0;
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        readLock = lock.readLock();
+        writeLock = lock.writeLock();
+    }
+
+    /**
+     * @return arena used by Users that do not belong to a UserTree
+     */
+    public static synchronized TweetArena getShared() {
+        if (shared == null) {
+            shared = new TweetArena();
+        }
+        return shared;
+    }
+
+    /**
+     * Copies tweet into the arena
+     *
+     * @param tweet: message to store
+     * @return handle for reading the tweet back
+     */
+    public int store(String tweet) {
+        byte[] bytes = tweet.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("tweet too long to store");
+        }
+        writeLock.lock();
+        try {
+            int handle = newSlot();
+            write(handle, ByteBuffer.wrap(bytes));
+            return handle;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param handle: handle returned by store()
+     * @return bytes the tweet takes up in its segment, including its length
+     */
+    public int sizeOf(int handle) {
+        readLock.lock();
+        try {
+            checkLive(handle);
+            return lengthOf(handle) + 2;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Decodes a tweet straight out of its segment, without an intermediate copy
+     * of the bytes on the heap
+     *
+     * @param handle: handle returned by store()
+     * @return the tweet text
+     */
+    public String get(int handle) {
+        readLock.lock();
+        try {
+            checkLive(handle);
+            return StandardCharsets.UTF_8.decode(bytesOf(handle)).toString();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Releases a tweet. Its bytes are reclaimed by the next compact().
+     *
+     * @param handle: handle returned by store(), must not be used afterwards
+     */
+    public void free(int handle) {
+        writeLock.lock();
+        try {
+            checkLive(handle);
+            int length = lengthOf(handle);
+            deadBytes[slotSegment[handle]] += length + 2;
+            liveBytes -= length + 2;
+            slotSegment[handle] = -1;
+            if (numFree == freeSlots.length) {
+                freeSlots = grow(freeSlots);
+            }
+            freeSlots[numFree++] = handle;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the live tweets out of every segment that is at least half dead and
+     * drops those segments. Handles stay valid.
+     *
+     * @return number of segments released
+     */
+    public int compact() {
+        writeLock.lock();
+        try {
+            boolean[] evacuate = new boolean[segments.size()];
+            int released = 0;
+            for (int s = 0; s < segments.size(); s++) {
+                if (s != current && segments.get(s) != null && deadBytes[s] >= SEGMENT_SIZE / 2) {
+                    evacuate[s] = true;
+                    released++;
+                }
+            }
+            if (released == 0) {
+                return 0;
+            }
+            for (int handle = 0; handle < numSlots; handle++) {
+                int s = slotSegment[handle];
+                if (s >= 0 && evacuate[s]) {
+                    ByteBuffer bytes = bytesOf(handle);
+                    liveBytes -= bytes.remaining() + 2;
+                    write(handle, bytes);
+                }
+            }
+            for (int s = 0; s < evacuate.length; s++) {
+                if (evacuate[s]) {
+                    segments.set(s, null); // direct memory is freed once collected
+                    deadBytes[s] = 0;
+                }
+            }
+            return released;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return bytes of off-heap memory reserved by this arena
+     */
+    public long getReservedBytes() {
+        readLock.lock();
+        try {
+            long total = 0;
+            for (ByteBuffer segment : segments) {
+                if (segment != null) {
+                    total += segment.capacity();
+                }
+            }
+            return total;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return bytes used by tweets that have not been freed
+     */
+    public long getLiveBytes() {
+        readLock.lock();
+        try {
+            return liveBytes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the bytes of handle to the current segment, opening a new segment
+     * when it is full, and points the slot at them
+     */
+    private void write(int handle, ByteBuffer bytes) {
+        int length = bytes.remaining();
+        ByteBuffer segment = segments.get(current);
+        if (segment.remaining() < length + 2) {
+            current = openSegment();
+            segment = segments.get(current);
+        }
+        slotSegment[handle] = current;
+        slotOffset[handle] = segment.position();
+        segment.putShort((short) length);
+        segment.put(bytes);
+        liveBytes += length + 2;
+    }
+
+    /**
+     * @return index of a new empty segment, reusing released positions
+     */
+    private int openSegment() {
+        for (int s = 0; s < segments.size(); s++) {
+            if (segments.get(s) == null) {
+                segments.set(s, ByteBuffer.allocateDirect(SEGMENT_SIZE));
+                return s;
+            }
+        }
+        segments.add(ByteBuffer.allocateDirect(SEGMENT_SIZE));
+        if (segments.size() > deadBytes.length) {
+            deadBytes = grow(deadBytes);
+        }
+        return segments.size() - 1;
+    }
+
+    private int newSlot() {
+        if (numFree > 0) {
+            return freeSlots[--numFree];
+        }
+        if (numSlots == slotSegment.length) {
+            slotSegment = grow(slotSegment);
+            slotOffset = grow(slotOffset);
+        }
+        return numSlots++;
+    }
+
+    /**
+     * @return read-only view over the tweet bytes of handle, sharing the segment
+     */
+    private ByteBuffer bytesOf(int handle) {
+        ByteBuffer view = segments.get(slotSegment[handle]).asReadOnlyBuffer();
+        int start = slotOffset[handle] + 2;
+        view.limit(start + lengthOf(handle));
+        view.position(start);
+        return view;
+    }
+
+    /**
+     * Rejects handles that were never handed out or have been freed, whose
+     * slot would otherwise point at segment -1 or at a reused tweet
+     */
+    private void checkLive(int handle) {
+        if (handle < 0 || handle >= numSlots || slotSegment[handle] < 0) {
+            throw new IllegalArgumentException("tweet handle " + handle + " is not live");
+        }
+    }
+
+    private int lengthOf(int handle) {
+        return segments.get(slotSegment[handle]).getShort(slotOffset[handle]) & 0xFFFF;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+
+/**
+ * @author Kevin Wong
+ * Benchmark comparing tweets kept as Strings on the heap with tweets kept in a
+ * TweetArena. For each layout it stores the same tweets, reports the heap they
+ * retain, then churns short-lived garbage while they are live and reports the
+ * time spent in garbage collection.
+ *
+ * Usage: java -Xmx2g TweetArenaBenchmark [numTweets]
+ */
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+
+public class TweetArenaBenchmark {
+    private static final String[] WORDS = { "good", "morning", "lol", "coffee", "java", "swing", "happy",
+            "tweet", "friday", "weekend", "great", "meeting", "lunch", "haha" };
+
+    // keeps the stored tweets reachable while garbage is churned
+    private static Object live;
+
+    public static void main(String args[]) {
+        int numTweets = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+        System.out.println("Storing " + numTweets + " tweets");
+        Result strings = run("String on heap", numTweets, false);
+        Result arena = run("TweetArena", numTweets, true);
+
+        System.out.println();
+        System.out.printf("Heap retained: %,d KB -> %,d KB%n", strings.heapBytes / 1024,
+                arena.heapBytes / 1024);
+        System.out.printf("GC time during churn: %d ms -> %d ms%n", strings.gcMillis, arena.gcMillis);
+        System.out.printf("Full GC time: %d ms -> %d ms%n", strings.fullGcMillis, arena.fullGcMillis);
+    }
+
+    private static Result run(String name, int numTweets, boolean offHeap) {
+        live = null;
+        long before = usedHeapAfterGc();
+        if (offHeap) {
+            TweetArena store = new TweetArena();
+            int[] handles = new int[numTweets];
+            for (int i = 0; i < numTweets; i++) {
+                handles[i] = store.store(tweet(i));
+            }
+            live = new Object[] { store, handles };
+        } else {
+            LinkedList<String> store = new LinkedList<String>();
+            for (int i = 0; i < numTweets; i++) {
+                store.add(tweet(i));
+            }
+            live = store;
+        }
+        Result result = new Result();
+        result.heapBytes = usedHeapAfterGc() - before;
+
+        long gcStart = gcMillis();
+        long checksum = 0;
+        for (int i = 0; i < 20000000; i++) {
+            checksum += new StringBuilder("garbage").append(i).length();
+        }
+        result.gcMillis = gcMillis() - gcStart;
+
+        long fullStart = gcMillis();
+        System.gc();
+        result.fullGcMillis = gcMillis() - fullStart;
+
+        System.out.printf("%-15s heap %,10d KB   churn GC %5d ms   full GC %4d ms   (%d)%n", name,
+                result.heapBytes / 1024, result.gcMillis, result.fullGcMillis, checksum % 10);
+        return result;
+    }
+
+    private static String tweet(int i) {
+        return WORDS[i % WORDS.length] + " " + WORDS[(i / 7) % WORDS.length] + " #" + WORDS[(i / 3) % WORDS.length]
+                + " number " + i;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+
+    private static class Result {
+        private long heapBytes;
+        private long gcMillis;
+        private long fullGcMillis;
+    }
+}
\ No newline at end of file
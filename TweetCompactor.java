@@ -0,0 +1,119 @@
+
+/**
+ * @author Kevin Wong
+ * Background job that reclaims deleted tweets in batches. Each run takes up to
+ * a batch of deletions from the tree's Tombstones, drops them from the feeds
+ * of the authors' followers with one pass per feed, and releases their text in
+ * the TweetArena.
+ *
+ * Text is released one run after its tweet is dropped, so a reader that
+ * checked User.isDeleted() just before the deletion has finished with the
+ * handle before it can be reused.
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TweetCompactor {
+    private Tombstones tombstones;
+    private TweetArena arena;
+    private int batchSize;
+    private ScheduledExecutorService scheduler;
+    // arena handles of the previous batch, released on the next run
+    private int[] toFree = new int[0];
+    private long numCompacted = 0;
+
+    /**
+     * Constructor
+     *
+     * @param tombstones: deletions to compact
+     * @param arena:      arena holding the text of the deleted tweets
+     * @param batchSize:  most deletions to handle per run
+     */
+    public TweetCompactor(Tombstones tombstones, TweetArena arena, int batchSize) {
+        this.tombstones = tombstones;
+        this.arena = arena;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs compact() in the background at a fixed interval
+     *
+     * @param intervalMillis: time between runs
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tweet-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::compact, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background runs
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Handles one batch of deletions
+     *
+     * @return number of deletions handled
+     */
+    public synchronized int compact() {
+        ArrayList<Tombstones.Tombstone> batch = new ArrayList<Tombstones.Tombstone>();
+        Tombstones.Tombstone next;
+        while (batch.size() < batchSize && (next = tombstones.poll()) != null) {
+            batch.add(next);
+        }
+        // release the text dropped by the previous run
+        for (int handle : toFree) {
+            arena.free(handle);
+        }
+        if (toFree.length > 0) {
+            arena.compact();
+        }
+        // every feed that may hold one of the tweets, visited once
+        IdentityHashMap<FeedBus, Boolean> feeds = new IdentityHashMap<FeedBus, Boolean>();
+        toFree = new int[batch.size()];
+        int n = 0;
+        for (Tombstones.Tombstone t : batch) {
+            User author = t.getAuthor();
+            for (Observer o : author.getFollowers()) {
+                feeds.put(((User) o).getFeed(), Boolean.TRUE);
+            }
+            int i = author.indexOfTweet(t.getId());
+            if (author.getArena() == arena) {
+                toFree[n++] = author.getTweetHandle(i);
+            }
+        }
+        toFree = Arrays.copyOf(toFree, n);
+        for (FeedBus feed : feeds.keySet()) {
+            feed.purgeDeleted();
+        }
+        numCompacted += batch.size();
+        if (!batch.isEmpty()) {
+            Log.info("compactor.batch", "tweets", batch.size(), "feeds", feeds.size(), "pending",
+                    tombstones.size());
+        }
+        return batch.size();
+    }
+
+    /**
+     * @return number of deletions handled so far
+     */
+    public synchronized long getNumCompacted() {
+        return numCompacted;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,86 @@
+
+/**
+ * @author Kevin Wong
+ * Benchmark for TweetIdGenerator. Each thread draws ids from the same
+ * generator for a fixed time and checks that every id it gets is greater than
+ * its previous one. At the end the ids of all threads are merged and checked
+ * for duplicates, and the total rate is reported. Past 4096 ids per
+ * millisecond the generator runs ahead of the clock, which is reported too.
+ *
+ * Usage: java TweetIdBenchmark [threads] [seconds]
+ */
+import java.util.Arrays;
+
+public class TweetIdBenchmark {
+    public static void main(String args[]) throws InterruptedException {
+        int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        // warm up the CAS loop before timing it
+        run(new TweetIdGenerator(1), numThreads, 500, false);
+        TweetIdGenerator generator = new TweetIdGenerator(1);
+        long[][] ids = run(generator, numThreads, seconds * 1000, true);
+
+        long total = 0;
+        for (long[] part : ids) {
+            total += part.length;
+        }
+        System.out.printf("%d threads: %,d ids in %d s = %,d ids/sec%n", numThreads, total, seconds,
+                total / seconds);
+
+        long[] all = new long[(int) total];
+        int n = 0;
+        for (long[] part : ids) {
+            System.arraycopy(part, 0, all, n, part.length);
+            n += part.length;
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                throw new IllegalStateException("duplicate id " + all[i]);
+            }
+        }
+        System.out.println("No duplicates, ids strictly increasing within each thread");
+        System.out.println("Node of last id: " + TweetIdGenerator.nodeOf(all[all.length - 1])
+                + ", ahead of clock: "
+                + (TweetIdGenerator.timeOf(all[all.length - 1]) - System.currentTimeMillis()) + " ms");
+    }
+
+    /**
+     * @return the ids each thread drew, in the order it drew them
+     */
+    private static long[][] run(TweetIdGenerator generator, int numThreads, long millis, boolean keep)
+            throws InterruptedException {
+        long[][] ids = new long[numThreads][];
+        Thread[] threads = new Thread[numThreads];
+        long deadline = System.currentTimeMillis() + millis;
+        for (int t = 0; t < numThreads; t++) {
+            final int slot = t;
+            threads[t] = new Thread(() -> {
+                long[] mine = new long[1 << 16];
+                int count = 0;
+                long prev = 0;
+                while ((count & 1023) != 0 || System.currentTimeMillis() < deadline) {
+                    long id = generator.nextId();
+                    if (id <= prev) {
+                        throw new IllegalStateException("id went backwards: " + prev + " then " + id);
+                    }
+                    prev = id;
+                    if (keep) {
+                        if (count == mine.length) {
+                            mine = Arrays.copyOf(mine, count * 2);
+                        }
+                        mine[count] = id;
+                    }
+                    count++;
+                }
+                ids[slot] = keep ? Arrays.copyOf(mine, count) : new long[0];
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return ids;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+
+/**
+ * @author Kevin Wong
+ * Generates 64 bit tweet ids in the style of Snowflake: 41 bits of
+ * milliseconds since EPOCH, 10 bits of node number and a 12 bit sequence
+ * within the millisecond. Ids sort by time, are unique across nodes, and every
+ * id from one generator is strictly greater than the one before.
+ *
+ * The last id handed out is kept in a single AtomicLong and advanced with a
+ * compare-and-set loop, so no thread ever blocks. If more than 4096 ids are
+ * asked for within one millisecond, or the clock moves backwards, the
+ * generator keeps counting from its last id instead of waiting for the clock.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TweetIdGenerator {
+    // 2023-01-01T00:00:00Z, the start of the 41 bit timestamp
+    public static final long EPOCH = 1672531200000L;
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE = (1L << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIME_SHIFT = NODE_BITS + SEQUENCE_BITS;
+
+    private static TweetIdGenerator shared;
+
+    private long node;
+    private AtomicLong last = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param node: number of this node, 0 to MAX_NODE
+     */
+    public TweetIdGenerator(long node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    /**
+     * @return generator used by Users that do not belong to a UserTree
+     */
+    public static synchronized TweetIdGenerator getShared() {
+        if (shared == null) {
+            shared = new TweetIdGenerator(0);
+        }
+        return shared;
+    }
+
+    /**
+     * @return a new id, greater than every id returned before by this generator
+     */
+    public long nextId() {
+        while (true) {
+            long prev = last.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long time = prev >>> TIME_SHIFT;
+            long sequence = 0;
+            if (now > time) {
+                time = now;
+            } else {
+                // same millisecond or the clock went back, continue from prev
+                sequence = (prev & SEQUENCE_MASK) + 1;
+                if (sequence > SEQUENCE_MASK) {
+                    time++;
+                    sequence = 0;
+                }
+            }
+            long id = (time << TIME_SHIFT) | (node << SEQUENCE_BITS) | sequence;
+            if (last.compareAndSet(prev, id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @param id: an id from any generator
+     * @return time the id was generated at, in milliseconds since 1970
+     */
+    public static long timeOf(long id) {
+        return (id >>> TIME_SHIFT) + EPOCH;
+    }
+
+    /**
+     * @param id: an id from any generator
+     * @return node of the generator that made id
+     */
+    public static long nodeOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,355 @@
+/**
+ * @author Kevin Wong
+ * In-memory inverted index over every tweet posted in a UserTree. Each tweet
+ * gets a dense document number as it is posted and each term keeps a posting
+ * list of those numbers, delta encoded as variable length bytes in blocks of
+ * BLOCK numbers that can be decoded on their own.
+ *
+ * Queries only touch the posting lists of their own terms. The shortest list
+ * is walked block by block from its newest end and the other lists are only
+ * probed at the blocks that could hold each candidate, so a query that fills
+ * its limit early decodes a few blocks. In the worst case the cost grows with
+ * the shortest list and with the candidates rejected by the filters, not with
+ * the total number of tweets.
+ *
+ * Writers take turns on the index's monitor, readers take no lock at all.
+ * Every list publishes its new length through a volatile write after the
+ * entry and the document's details are written, so a reader never sees a
+ * document before it is complete.
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TweetIndex implements TreeListener {
+    // document numbers per independently decodable block of a posting list
+    private static final int BLOCK = 128;
+
+    private SubtreeIndex subtrees;
+    private ConcurrentHashMap<String, PostingList> postings;
+    // per document: author, position within the author's tweets, and post time.
+    // The text itself stays in the author's TweetArena.
+    private User[] authors;
+    private int[] ordinals;
+    private long[] times;
+    private volatile int numDocs = 0;
+
+    /**
+     * Constructor
+     *
+     * @param subtrees: index of the same tree, answers the group filter
+     */
+    public TweetIndex(SubtreeIndex subtrees) {
+        this.subtrees = subtrees;
+        postings = new ConcurrentHashMap<String, PostingList>();
+        authors = new User[1024];
+        ordinals = new int[1024];
+        times = new long[1024];
+    }
+
+    /**
+     * Adds a newly posted tweet to the index
+     */
+    @Override
+    public synchronized void tweetPosted(User author, long id, String tweet, long time) {
+        int doc = numDocs;
+        if (doc == ordinals.length) {
+            authors = Arrays.copyOf(authors, doc * 2);
+            ordinals = Arrays.copyOf(ordinals, doc * 2);
+            times = Arrays.copyOf(times, doc * 2);
+        }
+        authors[doc] = author;
+        ordinals[doc] = author.indexOfTweet(id);
+        times[doc] = time;
+        numDocs = doc + 1;
+        String[] terms = tokenize(tweet);
+        for (int i = 0; i < terms.length; i++) {
+            PostingList list = postings.get(terms[i]);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(terms[i], list);
+            }
+            list.add(doc); // repeated terms in one tweet are only added once
+        }
+    }
+
+    /**
+     * Finds tweets containing every term in the query, in any order
+     *
+     * @param query:  words to search for
+     * @param author: only return tweets by this User, or null for any author
+     * @param group:  only return tweets by users under this group, or null for
+     *                the whole tree
+     * @param limit:  maximum number of results
+     * @return matching tweets, newest first
+     */
+    public List<Hit> search(String query, User author, UserGroup group, int limit) {
+        return find(query, false, author, group, limit);
+    }
+
+    /**
+     * Finds tweets containing the words of the phrase next to each other, in
+     * order
+     *
+     * @param phrase: words to search for
+     * @param author: only return tweets by this User, or null for any author
+     * @param group:  only return tweets by users under this group, or null for
+     *                the whole tree
+     * @param limit:  maximum number of results
+     * @return matching tweets, newest first
+     */
+    public List<Hit> searchPhrase(String phrase, User author, UserGroup group, int limit) {
+        return find(phrase, true, author, group, limit);
+    }
+
+    /**
+     * @return number of tweets in the index
+     */
+    public int size() {
+        return numDocs;
+    }
+
+    /**
+     * Walks the shortest posting list from its newest block, keeps the
+     * documents every other list contains, then applies the filters until
+     * limit hits are found
+     */
+    private List<Hit> find(String query, boolean phrase, User author, UserGroup group, int limit) {
+        ArrayList<Hit> hits = new ArrayList<Hit>();
+        String[] terms = tokenize(query);
+        if (terms.length == 0 || limit <= 0) {
+            return hits;
+        }
+        Cursor[] cursors = new Cursor[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            PostingList list = postings.get(terms[i]);
+            if (list == null) {
+                return hits;
+            }
+            cursors[i] = new Cursor(list);
+        }
+        Arrays.sort(cursors, (a, b) -> Integer.compare(a.count, b.count));
+        Cursor driver = cursors[0];
+        for (int b = driver.numBlocks() - 1; b >= 0 && hits.size() < limit; b--) {
+            int[] block = driver.block(b);
+            candidates: for (int i = block.length - 1; i >= 0 && hits.size() < limit; i--) {
+                int doc = block[i];
+                for (int c = 1; c < cursors.length; c++) {
+                    if (!cursors[c].contains(doc)) {
+                        continue candidates;
+                    }
+                }
+                Hit hit = filter(doc, phrase ? terms : null, author, group);
+                if (hit != null) {
+                    hits.add(hit);
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return the document as a hit, or null if a filter rejects it
+     */
+    private Hit filter(int doc, String[] phrase, User author, UserGroup group) {
+        User docAuthor = authors[doc];
+        if (author != null && docAuthor != author) {
+            return null;
+        }
+        if (group != null && !subtrees.isUnder(docAuthor, group)) {
+            return null;
+        }
+        String text = docAuthor.getTweet(ordinals[doc]);
+        if (text == null) {
+            return null; // deleted, its postings are left in place
+        }
+        if (phrase != null && !containsPhrase(tokenize(text), phrase)) {
+            return null;
+        }
+        return new Hit(docAuthor, docAuthor.getTweetId(ordinals[doc]), text, times[doc]);
+    }
+
+    /**
+     * Splits text into lower case words, dropping punctuation
+     *
+     * @param text: text to split
+     * @return terms in the order they appear
+     */
+    public static String[] tokenize(String text) {
+        ArrayList<String> terms = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return terms.toArray(new String[terms.size()]);
+    }
+
+    /**
+     * @return true if phrase appears as a contiguous run of words in terms
+     */
+    private static boolean containsPhrase(String[] terms, String[] phrase) {
+        for (int i = 0; i + phrase.length <= terms.length; i++) {
+            int j = 0;
+            while (j < phrase.length && terms[i + j].equals(phrase[j])) {
+                j++;
+            }
+            if (j == phrase.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A single search result
+     */
+    public static class Hit {
+        private User author;
+        private long id;
+        private String tweet;
+        private long time;
+
+        private Hit(User author, long id, String tweet, long time) {
+            this.author = author;
+            this.id = id;
+            this.tweet = tweet;
+            this.time = time;
+        }
+
+        public User getAuthor() {
+            return author;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getTweet() {
+            return tweet;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return author + ": " + tweet;
+        }
+    }
+
+    /**
+     * Ascending document numbers stored as the gap from the previous number, 7
+     * bits per byte with the high bit marking that more bytes follow. The first
+     * number of every block is stored whole, with the block's first number and
+     * byte offset kept aside so a reader can jump straight to any block.
+     */
+    private static class PostingList {
+        private byte[] bytes = new byte[4];
+        private int length = 0;
+        private int[] blockFirst = new int[1];
+        private int[] blockOffset = new int[1];
+        private int last = -1;
+        // written last, so readers see every entry it covers
+        private volatile int count = 0;
+
+        private void add(int doc) {
+            if (doc == last) {
+                return;
+            }
+            int n = count;
+            int gap = doc - last;
+            if (n % BLOCK == 0) {
+                int b = n / BLOCK;
+                if (b == blockFirst.length) {
+                    blockFirst = Arrays.copyOf(blockFirst, b * 2);
+                    blockOffset = Arrays.copyOf(blockOffset, b * 2);
+                }
+                blockFirst[b] = doc;
+                blockOffset[b] = length;
+                gap = doc;
+            }
+            last = doc;
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((gap & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+            count = n + 1;
+        }
+    }
+
+    /**
+     * Read side of a PostingList, fixed at the entries published when it was
+     * created, keeping the last block it decoded
+     */
+    private static class Cursor {
+        private int count;
+        private byte[] bytes;
+        private int[] blockFirst;
+        private int[] blockOffset;
+        private int cachedBlock = -1;
+        private int[] cached;
+
+        private Cursor(PostingList list) {
+            count = list.count; // read first, the arrays are at least this new
+            bytes = list.bytes;
+            blockFirst = list.blockFirst;
+            blockOffset = list.blockOffset;
+        }
+
+        private int numBlocks() {
+            return (count + BLOCK - 1) / BLOCK;
+        }
+
+        /**
+         * @return the ascending document numbers of block b
+         */
+        private int[] block(int b) {
+            if (b == cachedBlock) {
+                return cached;
+            }
+            int n = Math.min(BLOCK, count - b * BLOCK);
+            int[] docs = new int[n];
+            int pos = blockOffset[b], doc = 0;
+            for (int i = 0; i < n; i++) {
+                int gap = 0, shift = 0;
+                byte x;
+                do {
+                    x = bytes[pos++];
+                    gap |= (x & 0x7F) << shift;
+                    shift += 7;
+                } while ((x & 0x80) != 0);
+                doc = i == 0 ? gap : doc + gap;
+                docs[i] = doc;
+            }
+            cachedBlock = b;
+            cached = docs;
+            return docs;
+        }
+
+        /**
+         * Finds the only block that could hold doc by its first number, then
+         * searches that block
+         */
+        private boolean contains(int doc) {
+            int blocks = numBlocks();
+            int b = Arrays.binarySearch(blockFirst, 0, blocks, doc);
+            if (b >= 0) {
+                return true;
+            }
+            b = -b - 2; // last block starting below doc
+            return b >= 0 && Arrays.binarySearch(block(b), doc) >= 0;
+        }
+    }
+}
\ No newline at end of file
@@ -4,20 +4,47 @@
  * User type of SysEntry in a UserTree. Represents a single active user
  * on MiniTwitter. Inherits a list of followers from Observer
  */
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-
-import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class User extends Subject implements SysEntry, Observer {
     private String userId;
     private UserGroup group;
-    private HashSet<String> followings;
-    private LinkedList<String> tweets;
-    public DefaultMutableTreeNode node;
-    private UserView userView;
+    private UserTree tree;
+    private int index;
+    // concurrent so follows and recommendation queries can overlap
+    private Set<String> followings;
+    // handles of this User's tweets in the off-heap TweetArena, oldest first,
+    // each with its id and stamped with the version it was posted at
+    private TweetArena arena;
+    private TweetIdGenerator ids;
+    private VersionClock clock;
+    // guards appends and deletions of this User's tweets. The tree wide clock
+    // is only held to stamp and publish them.
+    private final Object tweetLock = new Object();
+    private int[] tweets;
+    private long[] tweetIds;
+    private long[] tweetVersions;
+    // whether each tweet counted as positive when it was posted
+    private boolean[] positive;
+    private volatile int numTweets = 0;
+    // version each tweet was deleted at, 0 while it is live. Slots of deleted
+    // tweets stay so positions never change.
+    private long[] deletedAt;
+    // versions of every deletion in order, for counting them at a snapshot
+    private long[] deletions;
+    private volatile int numDeleted = 0;
+    private HyperLogLog reach;
+    private FeedBus feed;
+    // estimated bytes held by this User, see MemoryMeter
+    private AtomicLong retainedBytes = new AtomicLong();
     private long creationTime;
     private long lastUpdated = 0;
 
@@ -28,14 +55,38 @@ public class User extends Subject implements SysEntry, Observer {
      * @param g:  parent Group for this User
      */
     public User(String id, UserGroup g) {
+        this(id, g, null);
+    }
+
+    /**
+     * Overloaded constructor for a User that reports its activity to the
+     * listeners of a UserTree
+     * 
+     * @param id:   name of this User
+     * @param g:    parent Group for this User
+     * @param tree: tree this User belongs to, may be null
+     */
+    public User(String id, UserGroup g, UserTree tree) {
+        this.tree = tree;
+        index = tree != null ? tree.nextUserIndex() : -1;
         userId = id;
         group = g;
         creationTime = System.currentTimeMillis();
-        group.addChild(this);
-        followings = new HashSet<String>();
-        tweets = new LinkedList<String>();
+        followings = ConcurrentHashMap.newKeySet();
+        arena = tree != null ? tree.getTweetArena() : TweetArena.getShared();
+        ids = tree != null ? tree.getIdGenerator() : TweetIdGenerator.getShared();
+        clock = group.getClock();
+        tweets = new int[4];
+        tweetIds = new long[4];
+        tweetVersions = new long[4];
+        positive = new boolean[4];
+        deletedAt = new long[4];
+        deletions = new long[4];
+        account(MemoryMeter.USER);
         follow(userId);
         attach(this);
+        // last, so traversals and snapshots never see a half built User
+        group.addChild(this);
     }
 
     /**
@@ -44,7 +95,19 @@ public class User extends Subject implements SysEntry, Observer {
      *          otherwise
      */
     public boolean follow(String id) {
-        return followings.add(id);
+        if (!followings.add(id)) {
+            return false;
+        }
+        account(MemoryMeter.FOLLOWING);
+        return true;
+    }
+
+    /**
+     * @param id: name of a user
+     * @return true if this User follows the user with corresponding id
+     */
+    public boolean isFollowing(String id) {
+        return followings.contains(id);
     }
 
     /**
@@ -59,30 +122,332 @@ public class User extends Subject implements SysEntry, Observer {
         return strArr;
     }
 
+    /**
+     * Read-only view of the ids this User follows, for walking them without
+     * copying. Iteration is weakly consistent: it never fails on concurrent
+     * follows and may or may not see them.
+     * 
+     * @return ids of the users followed by this User
+     */
+    public Set<String> followingsView() {
+        return Collections.unmodifiableSet(followings);
+    }
+
+    /**
+     * Adds follower to this User's followers and counts it towards the reach of
+     * this User and every enclosing group. A User follows itself to see its own
+     * tweets, which is not counted as reach.
+     * 
+     * @param follower: the User wanting to follow this User
+     */
+    @Override
+    public void attach(Observer follower) {
+        super.attach(follower);
+        account(MemoryMeter.FOLLOWER);
+        if (follower == this) {
+            return;
+        }
+        String id = follower.toString();
+        getReach().add(id);
+        for (UserGroup g = group; g != null; g = g.getParent()) {
+            g.getReach().add(id);
+        }
+    }
+
+    /**
+     * @return sketch of the distinct followers of this User
+     */
+    public synchronized HyperLogLog getReach() {
+        // created on first use so the precision follows the enclosing group
+        if (reach == null) {
+            reach = new HyperLogLog(group.getReach().getPrecision());
+        }
+        return reach;
+    }
+
+    /**
+     * @return position of this User among the users of its tree, counting from
+     *         0 in order of creation, or -1 if it has no tree
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the group containing this User
+     */
+    public UserGroup getGroup() {
+        return group;
+    }
+
     /**
      * @return number of tweets associated with this User
      */
     public int numTweets() {
-        return tweets.size();
+        return numTweets;
+    }
+
+    /**
+     * @param version: snapshot version from the tree's VersionClock
+     * @return number of tweets this User had posted at that version
+     */
+    public int numTweets(long version) {
+        int size = numTweets;
+        return VersionClock.countAt(tweetVersions, size, version);
+    }
+
+    /**
+     * @param version: snapshot version from the tree's VersionClock
+     * @return number of tweets this User had posted at that version and not
+     *         deleted since
+     */
+    public int numLiveTweets(long version) {
+        int size = numTweets(version);
+        int removed = numDeleted;
+        return size - VersionClock.countAt(deletions, removed, version);
+    }
+
+    /**
+     * @return number of tweets this User has posted and not deleted
+     */
+    public int numLiveTweets() {
+        return numTweets - numDeleted;
+    }
+
+    /**
+     * @param i: position of the tweet, 0 being the oldest
+     * @return true if the tweet has been deleted, or if i is -1 as returned by
+     *         indexOfTweet() for an unknown id
+     */
+    public boolean isDeleted(int i) {
+        if (i < 0) {
+            return true;
+        }
+        return numDeleted != 0 && deletedAt[i] != 0;
     }
 
     /**
-     * @return LinkedList of all tweets associated with this User
+     * @param i:       position of the tweet, 0 being the oldest
+     * @param version: snapshot version from the tree's VersionClock
+     * @return true if the tweet had been deleted at that version
+     */
+    public boolean isDeleted(int i, long version) {
+        if (numDeleted == 0) {
+            return false;
+        }
+        long at = deletedAt[i];
+        return at != 0 && at <= version;
+    }
+
+    /**
+     * Read from a flag kept at posting time, so the text of a tweet deleted
+     * since a snapshot does not have to be in the arena any more
+     * 
+     * @param i: position of the tweet, 0 being the oldest
+     * @return true if the tweet contains any of the "positive" words
+     */
+    public boolean isPositive(int i) {
+        if (i >= numTweets) {
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+        return positive[i];
+    }
+
+    /**
+     * Deletes one of this User's tweets by writing a tombstone for it. Copies
+     * in follower feeds are hidden when read and dropped later by the tree's
+     * TweetCompactor, and the group totals are updated straight away.
+     * 
+     * @param id: id of the tweet to delete
+     * @return true if this User posted the tweet and it was not already deleted
+     */
+    public boolean deleteTweet(long id) {
+        int i = indexOfTweet(id);
+        if (i < 0) {
+            return false;
+        }
+        int size;
+        synchronized (tweetLock) {
+            if (deletedAt[i] != 0) {
+                return false;
+            }
+            // the handle is only freed after the tombstone written below, so
+            // it is still live here
+            size = arena.sizeOf(tweets[i]);
+            if (numDeleted == deletions.length) {
+                deletions = Arrays.copyOf(deletions, numDeleted * 2);
+            }
+            synchronized (clock) {
+                long version = clock.advance();
+                deletedAt[i] = version;
+                deletions[numDeleted] = version;
+                numDeleted++; // publishes the deletion to readers
+            }
+        }
+        int pos = positive[i] ? 1 : 0;
+        for (UserGroup g = group; g != null; g = g.getParent()) {
+            g.adjust(0, 0, -1, -pos);
+        }
+        // the slot stays, the text goes once the compactor frees it
+        account(-size);
+        clock.touch();
+        if (tree != null) {
+            tree.fireTweetDeleted(this, id);
+        }
+        if (Log.isEnabled(Log.Level.DEBUG)) {
+            Log.debug("tweet.deleted", "user", userId, "id", id);
+        }
+        return true;
+    }
+
+    /**
+     * Decodes every tweet out of the arena. Prefer getTweet() or
+     * getTweetHandle() when only some tweets are needed.
+     * 
+     * @return LinkedList of all tweets associated with this User, except
+     *         deleted ones
      */
     public LinkedList<String> getTweets() {
-        return tweets;
+        LinkedList<String> result = new LinkedList<String>();
+        int size = numTweets;
+        for (int i = 0; i < size; i++) {
+            if (!isDeleted(i)) {
+                result.add(arena.get(tweets[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param i: position of the tweet, 0 being the oldest
+     * @return text of the tweet, or null if it has been deleted
+     */
+    public String getTweet(int i) {
+        int handle = getTweetHandle(i);
+        return isDeleted(i) ? null : arena.get(handle);
+    }
+
+    /**
+     * @param i: position of the tweet, 0 being the oldest
+     * @return handle of the tweet in getArena()
+     */
+    public int getTweetHandle(int i) {
+        if (i >= numTweets) {
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+        return tweets[i];
+    }
+
+    /**
+     * @param i: position of the tweet, 0 being the oldest
+     * @return id of the tweet
+     */
+    public long getTweetId(int i) {
+        if (i >= numTweets) {
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+        return tweetIds[i];
+    }
+
+    /**
+     * @param i: position of the tweet, 0 being the oldest
+     * @return version the tweet was posted at
+     */
+    public long getTweetVersion(int i) {
+        if (i >= numTweets) {
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+        return tweetVersions[i];
+    }
+
+    /**
+     * @param i: position of the tweet, 0 being the oldest
+     * @return version the tweet was deleted at, or 0 if it is live
+     */
+    public long getDeletionVersion(int i) {
+        if (i >= numTweets) {
+            throw new IndexOutOfBoundsException("Index: " + i);
+        }
+        return numDeleted == 0 ? 0 : deletedAt[i];
+    }
+
+    /**
+     * Ids only grow, so this is a binary search over this User's tweets
+     * 
+     * @param id: id of one of this User's tweets
+     * @return position of the tweet, or -1 if this User did not post it
+     */
+    public int indexOfTweet(long id) {
+        int size = numTweets;
+        int i = Arrays.binarySearch(tweetIds, 0, size, id);
+        return i >= 0 ? i : -1;
+    }
+
+    /**
+     * @return the arena holding this User's tweets
+     */
+    public TweetArena getArena() {
+        return arena;
     }
 
     /**
      * Adds a tweet to User.tweets. NOT responsible for distributing tweets
-     * to all followers.
+     * to all followers, which should only be done if this returns an id.
      * 
      * @param tweet: message to be posted as a tweet
+     * @return id of the new tweet, or -1 if the tree's post limiter rejected it
      */
-    public void postTweet(String tweet) {
+    public long postTweet(String tweet) {
+        if (tree != null && !tree.getPostLimiter().tryAcquire(index)) {
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                Log.debug("tweet.rejected", "user", userId);
+            }
+            return -1;
+        }
         lastUpdated = System.currentTimeMillis();
-        System.out.println(lastUpdated);
-        tweets.add(tweet);
+        int handle = arena.store(tweet);
+        account(MemoryMeter.TWEET + arena.sizeOf(handle));
+        boolean isPositive = NumPosTweetsVisitor.isPositive(tweet);
+        long id;
+        synchronized (tweetLock) {
+            if (numTweets == tweets.length) {
+                tweets = Arrays.copyOf(tweets, numTweets * 2);
+                tweetIds = Arrays.copyOf(tweetIds, numTweets * 2);
+                tweetVersions = Arrays.copyOf(tweetVersions, numTweets * 2);
+                positive = Arrays.copyOf(positive, numTweets * 2);
+                deletedAt = Arrays.copyOf(deletedAt, numTweets * 2);
+            }
+            // drawn under this User's lock so its ids stay in posting order,
+            // without holding up anyone else
+            id = ids.nextId();
+            tweets[numTweets] = handle;
+            tweetIds[numTweets] = id;
+            positive[numTweets] = isPositive;
+            synchronized (clock) {
+                tweetVersions[numTweets] = clock.advance();
+                numTweets++; // publishes the tweet to readers
+            }
+        }
+        List<String> tags = TrendTracker.extractTags(tweet);
+        int pos = isPositive ? 1 : 0;
+        // every enclosing group tracks its own totals, most recently active users
+        // and trending tags
+        for (UserGroup g = group; g != null; g = g.getParent()) {
+            g.adjust(0, 0, 1, pos);
+            g.getActivity().record(this, lastUpdated);
+            if (!tags.isEmpty()) {
+                g.getTrends().record(tags, lastUpdated);
+            }
+        }
+        clock.touch();
+        if (tree != null) {
+            tree.fireTweetPosted(this, id, tweet, lastUpdated);
+        }
+        // checked first so a disabled level costs no boxing on this path
+        if (Log.isEnabled(Log.Level.DEBUG)) {
+            Log.debug("tweet.posted", "user", userId, "id", id, "time", lastUpdated);
+        }
+        return id;
     }
 
     /**
@@ -98,32 +463,53 @@ public class User extends Subject implements SysEntry, Observer {
     /**
      * Method to implement visitor pattern, inherited from Visitable
      * 
-     * @return the integer value determined by the visitor for this User
+     * @return false if the visitor asked to stop the traversal
      */
     @Override
-    public int accept(SysEntryVisitor visitor) {
+    public <R> boolean accept(SysEntryVisitor<R> visitor) {
         return visitor.visit(this);
     }
 
     /**
-     * Associates this User with its corresponding UserView on creation of the
-     * UserView.
-     * This allows update() to call userView.addToFeed()
+     * @return estimated bytes held by this User's tweets, follows, followers
+     *         and feed
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Adds to the retained size of this User and every enclosing group. Lock
+     * free, so it may be called while holding other locks.
      * 
-     * @param uv: UserView associated with this User
+     * @param bytes: change in estimated bytes, negative when memory is released
      */
-    public void setUserView(UserView uv) {
-        userView = uv;
+    void account(long bytes) {
+        retainedBytes.addAndGet(bytes);
+        for (UserGroup g = group; g != null; g = g.getParent()) {
+            g.account(bytes);
+        }
+    }
+
+    /**
+     * @return the news feed of this User, shared by every UserView open on it
+     */
+    public synchronized FeedBus getFeed() {
+        if (feed == null) {
+            feed = new FeedBus(tree, this);
+        }
+        return feed;
     }
 
     /**
      * Method used by observer pattern to post tweets to this follower's feed
      * 
      * @param subject: the User sending this tweet
+     * @param id:      id of the tweet
      * @param tweet:   message to be posted to this User's feed
      */
-    public void update(Subject subject, String tweet) {
-        userView.addToFeed(((User) subject).toString(), tweet);
+    public void update(Subject subject, long id, String tweet) {
+        getFeed().publish((User) subject, id);
     }
 
     /**
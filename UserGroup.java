@@ -3,15 +3,32 @@
  * @author Kevin Wong
  * Composite SysEntry containing other UserGroups or Users
  */
-import java.util.HashSet;
-import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
 
 public class UserGroup implements SysEntry {
     private String groupId;
-    private HashSet<SysEntry> children;
-    public DefaultMutableTreeNode node;
+    private UserGroup parent;
+    private VersionClock clock;
+    // append-only children, each stamped with the version it was added at
+    private SysEntry[] children;
+    private long[] childVersions;
+    private volatile int numChildren = 0;
+    private ActivityIndex activity;
+    private TrendTracker trends = new TrendTracker();
+    private HyperLogLog reach;
+    // cached totals for the subtree rooted at this group, including itself
+    private int numUsers = 0;
+    private int numGroups = 1;
+    private long numTweets = 0;
+    private long numPosTweets = 0;
+    // estimated bytes held by the subtree, see MemoryMeter. An adder rather
+    // than the lock above, since every feed entry delivered is counted here.
+    private LongAdder retainedBytes = new LongAdder();
     private long creationTime;
 
     /**
@@ -20,9 +37,37 @@ public class UserGroup implements SysEntry {
      * @param id: name for this group
      */
     public UserGroup(String id) {
+        this(id, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Overloaded constructor for a root UserGroup whose reach sketches, and those
+     * of every entry below it, use the given precision
+     * 
+     * @param id:             name for this group
+     * @param reachPrecision: HyperLogLog precision for reach estimates
+     */
+    public UserGroup(String id, int reachPrecision) {
+        this(id, reachPrecision, ActivityIndex.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Overloaded constructor for a root UserGroup that also chooses how many
+     * recently active users it and every group below it remember
+     * 
+     * @param id:               name for this group
+     * @param reachPrecision:   HyperLogLog precision for reach estimates
+     * @param activityCapacity: most users kept by each ActivityIndex
+     */
+    public UserGroup(String id, int reachPrecision, int activityCapacity) {
         groupId = id;
-        children = new HashSet<SysEntry>();
+        activity = new ActivityIndex(activityCapacity);
+        clock = new VersionClock();
+        children = new SysEntry[4];
+        childVersions = new long[4];
         creationTime = System.currentTimeMillis();
+        reach = new HyperLogLog(reachPrecision);
+        retainedBytes.add(MemoryMeter.GROUP);
     }
 
     /**
@@ -34,22 +79,187 @@ public class UserGroup implements SysEntry {
     public UserGroup(String id, UserGroup parent) {
         groupId = id;
         creationTime = System.currentTimeMillis();
+        clock = parent.getClock();
+        children = new SysEntry[4];
+        childVersions = new long[4];
+        reach = new HyperLogLog(parent.getReach().getPrecision());
+        activity = new ActivityIndex(parent.getActivity().getCapacity());
+        this.parent = parent;
+        retainedBytes.add(MemoryMeter.GROUP);
         parent.addChild(this); // automatically associate this group with its parent
-        children = new HashSet<SysEntry>();
     }
 
     /**
      * @param u: SysEntry to add to this UserGroup as a child
      */
     public void addChild(SysEntry u) {
-        children.add(u);
+        synchronized (clock) {
+            if (numChildren == children.length) {
+                children = Arrays.copyOf(children, numChildren * 2);
+                childVersions = Arrays.copyOf(childVersions, numChildren * 2);
+            }
+            children[numChildren] = u;
+            childVersions[numChildren] = clock.advance();
+            numChildren++; // publishes the child to readers
+        }
+        if (u instanceof User) {
+            for (UserGroup g = this; g != null; g = g.getParent()) {
+                g.adjust(1, 0, 0, 0);
+                g.account(MemoryMeter.CHILD);
+            }
+        } else {
+            for (UserGroup g = this; g != null; g = g.getParent()) {
+                g.adjust(0, 1, 0, 0);
+                g.account(MemoryMeter.CHILD + MemoryMeter.GROUP);
+            }
+        }
+        clock.touch();
+    }
+
+    /**
+     * Updates the cached totals of this group only. Callers walk the parent
+     * chain so every enclosing group sees the change, O(depth) in total.
+     * 
+     * @param users:     change in number of users
+     * @param groups:    change in number of groups
+     * @param tweets:    change in number of tweets
+     * @param posTweets: change in number of positive tweets
+     */
+    public synchronized void adjust(int users, int groups, long tweets, long posTweets) {
+        numUsers += users;
+        numGroups += groups;
+        numTweets += tweets;
+        numPosTweets += posTweets;
+    }
+
+    /**
+     * Adds to the retained size of this group only, callers walk the parent
+     * chain like adjust()
+     * 
+     * @param bytes: change in estimated bytes
+     */
+    public void account(long bytes) {
+        retainedBytes.add(bytes);
+    }
+
+    /**
+     * @return estimated bytes held by every user and group under this group,
+     *         including itself
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.sum();
+    }
+
+    /**
+     * @return number of users anywhere under this group
+     */
+    public synchronized int getNumUsers() {
+        return numUsers;
+    }
+
+    /**
+     * @return number of groups under this group, counting this group
+     */
+    public synchronized int getNumGroups() {
+        return numGroups;
+    }
+
+    /**
+     * @return number of tweets posted by users anywhere under this group
+     */
+    public synchronized long getNumTweets() {
+        return numTweets;
+    }
+
+    /**
+     * @return number of positive tweets posted by users anywhere under this group
+     */
+    public synchronized long getNumPosTweets() {
+        return numPosTweets;
+    }
+
+    /**
+     * @return read-only copy of all children for this group, in insertion order
+     */
+    public List<SysEntry> getChildren() {
+        int size = numChildren;
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(children, size)));
+    }
+
+    /**
+     * @param index: position of the child within this group
+     * @return the child at the given position
+     */
+    public SysEntry getChildAt(int index) {
+        if (index >= numChildren) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return children[index];
+    }
+
+    /**
+     * @return number of direct children of this group
+     */
+    public int getChildCount() {
+        return numChildren;
+    }
+
+    /**
+     * @param version: snapshot version from the tree's VersionClock
+     * @return number of direct children this group had at that version
+     */
+    public int getChildCount(long version) {
+        int size = numChildren;
+        return VersionClock.countAt(childVersions, size, version);
+    }
+
+    /**
+     * @return the version clock shared by every entry in this group's tree
+     */
+    public VersionClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @param child: a direct child of this group
+     * @return position of child within this group, or -1 if it is not a child
+     */
+    public int getIndexOfChild(SysEntry child) {
+        int size = numChildren;
+        for (int i = 0; i < size; i++) {
+            if (children[i] == child) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return index of the most recently active users anywhere under this group
+     */
+    public ActivityIndex getActivity() {
+        return activity;
+    }
+
+    /**
+     * @return trending tags for tweets posted anywhere under this group
+     */
+    public TrendTracker getTrends() {
+        return trends;
+    }
+
+    /**
+     * @return sketch of the followers of every User anywhere under this group
+     */
+    public HyperLogLog getReach() {
+        return reach;
     }
 
     /**
-     * @return all children for this group
+     * @return the group containing this group, or null for the root group
      */
-    public HashSet<SysEntry> getChildren() {
-        return children;
+    public UserGroup getParent() {
+        return parent;
     }
 
     /**
@@ -65,10 +275,10 @@ public class UserGroup implements SysEntry {
     /**
      * Method to implement visitor pattern, inherited from Visitable
      * 
-     * @return the integer value determined by the visitor for this UserGroup
+     * @return false if the visitor asked to stop the traversal
      */
     @Override
-    public int accept(SysEntryVisitor visitor) {
+    public <R> boolean accept(SysEntryVisitor<R> visitor) {
         return visitor.visit(this);
     }
 
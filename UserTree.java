@@ -4,162 +4,497 @@
  * Tree structure to hold all tree nodes and generate a JTree with this info.
  * Also helps in implementation of visitor pattern
  */
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.swing.*;
-import javax.swing.tree.*;
 
 public class UserTree {
-    private HashSet<String> listNames;
-    private HashSet<String> listGroups;
-    DefaultMutableTreeNode root;
+    // number of past tweets pulled into a feed when following someone
+    public static final int BACKFILL = 20;
+
+    private NameRegistry names;
+    private CopyOnWriteArrayList<TreeListener> listeners;
+    private TweetIndex tweetIndex;
+    private TweetArena tweetArena;
+    private SubtreeIndex subtreeIndex;
+    private FollowRecommender recommender;
+    private TweetIdGenerator idGenerator;
+    private Tombstones tombstones;
+    private TweetCompactor compactor;
+    private GroupBroadcaster broadcaster;
+    private RateLimiter postLimiter;
+    private RateLimiter followLimiter;
+    private HashMap<Class<?>, CachedStat> statCache = new HashMap<Class<?>, CachedStat>();
+    private int numUsersCreated = 0;
+    UserGroup root;
+    private UserTreeModel model;
     private JTree tree;
 
     /**
      * Constructor which automatically places "Root" at the root of the tree
      */
     public UserTree() {
-        listNames = new HashSet<String>();
-        listGroups = new HashSet<String>();
-        root = addGroup("Root");
-        tree = new JTree(root);
+        this(HyperLogLog.DEFAULT_PRECISION, ActivityIndex.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Named instead of overloading the constructor, so an int precision can
+     * never be taken for an error bound
+     * 
+     * @param reachError: relative standard error of reach estimates, e.g. 0.02
+     * @return a tree whose reach estimates are within about reachError
+     */
+    public static UserTree withReachError(double reachError) {
+        return new UserTree(HyperLogLog.precisionFor(reachError), ActivityIndex.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param reachPrecision: HyperLogLog precision for reach estimates, between
+     *                        4 and 16
+     * @return a tree whose reach sketches use reachPrecision
+     */
+    public static UserTree withReachPrecision(int reachPrecision) {
+        return new UserTree(reachPrecision, ActivityIndex.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param activityCapacity: most recently active users each group remembers,
+     *                          the largest k mostRecent() can answer
+     * @return a tree whose groups remember activityCapacity users
+     */
+    public static UserTree withActivityCapacity(int activityCapacity) {
+        return new UserTree(HyperLogLog.DEFAULT_PRECISION, activityCapacity);
+    }
+
+    /**
+     * @param reachPrecision:   HyperLogLog precision for reach estimates
+     * @param activityCapacity: most users kept by each group's ActivityIndex
+     */
+    private UserTree(int reachPrecision, int activityCapacity) {
+        names = new NameRegistry();
+        tweetArena = new TweetArena();
+        idGenerator = new TweetIdGenerator(0);
+        tombstones = new Tombstones();
+        // reclaims up to 1000 deleted tweets every 5 seconds once deletions start
+        compactor = new TweetCompactor(tombstones, tweetArena, 1000);
+        broadcaster = new GroupBroadcaster(this);
+        root = new UserGroup("Root", reachPrecision, activityCapacity);
+        names.register(root.toString(), root);
+        model = new UserTreeModel(root);
+        listeners = new CopyOnWriteArrayList<TreeListener>();
+        subtreeIndex = new SubtreeIndex(root);
+        addTreeListener(subtreeIndex);
+        tweetIndex = new TweetIndex(subtreeIndex);
+        addTreeListener(tweetIndex);
+        recommender = new FollowRecommender(this);
+        addTreeListener(recommender);
+        // a user may post once a second with bursts of 5, follow twice a second
+        // with bursts of 10, and the whole tree accepts 1000 of each per second
+        postLimiter = new RateLimiter(1, 5, 1000, 2000);
+        followLimiter = new RateLimiter(2, 10, 1000, 2000);
+    }
+
+    /**
+     * @return index for the next User created in this tree
+     */
+    synchronized int nextUserIndex() {
+        return numUsersCreated++;
+    }
+
+    /**
+     * @param listener: listener to notify of activity in this tree
+     */
+    public void addTreeListener(TreeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Notifies all listeners that an entry was added to this tree
+     * 
+     * @param entry: the new User or UserGroup
+     */
+    private void fireEntryAdded(SysEntry entry) {
+        for (TreeListener listener : listeners) {
+            if (entry instanceof User) {
+                listener.userAdded((User) entry);
+            } else {
+                listener.groupAdded((UserGroup) entry);
+            }
+        }
+    }
+
+    /**
+     * Notifies all listeners that a User in this tree posted a tweet
+     * 
+     * @param author: the User that posted
+     * @param id:     id of the new tweet
+     * @param tweet:  the message that was posted
+     * @param time:   time the tweet was posted
+     */
+    void fireTweetPosted(User author, long id, String tweet, long time) {
+        for (TreeListener listener : listeners) {
+            listener.tweetPosted(author, id, tweet, time);
+        }
+    }
+
+    /**
+     * Records a deleted tweet for compaction and notifies all listeners
+     * 
+     * @param author: the User that deleted the tweet
+     * @param id:     id of the deleted tweet
+     */
+    void fireTweetDeleted(User author, long id) {
+        tombstones.add(author, id);
+        compactor.start(5000);
+        for (TreeListener listener : listeners) {
+            listener.tweetDeleted(author, id);
+        }
+    }
+
+    /**
+     * @param entry: a User or UserGroup in this tree
+     * @return estimated number of distinct users following entry, or following
+     *         anyone under entry if it is a group
+     */
+    public long getReach(SysEntry entry) {
+        if (entry instanceof User) {
+            return ((User) entry).getReach().estimate();
+        }
+        return ((UserGroup) entry).getReach().estimate();
+    }
+
+    /**
+     * @return the follow recommendation service for this tree
+     */
+    public FollowRecommender getRecommender() {
+        return recommender;
     }
 
     /**
-     * Method to gather JTree for rendering in the UI
+     * Sends an announcement to every user under group, see GroupBroadcaster
+     * 
+     * @param group:    group to broadcast to, nested groups included
+     * @param message:  the announcement
+     * @param progress: told about progress in the background, may be null
+     * @return the new broadcast, still being delivered
+     */
+    public GroupBroadcaster.Broadcast broadcast(UserGroup group, String message,
+            GroupBroadcaster.Progress progress) {
+        return broadcaster.broadcast(group, message, progress);
+    }
+
+    /**
+     * @return delivery service for group broadcasts
+     */
+    public GroupBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    /**
+     * @return deleted tweets waiting to be compacted
+     */
+    public Tombstones getTombstones() {
+        return tombstones;
+    }
+
+    /**
+     * @return background job reclaiming deleted tweets
+     */
+    public TweetCompactor getCompactor() {
+        return compactor;
+    }
+
+    /**
+     * @return generator of the ids of tweets posted in this tree
+     */
+    public TweetIdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * @return admission control for User.postTweet(), use setLimits() on it to
+     *         change the limits
+     */
+    public RateLimiter getPostLimiter() {
+        return postLimiter;
+    }
+
+    /**
+     * @return admission control for follow(), use setLimits() on it to change
+     *         the limits
+     */
+    public RateLimiter getFollowLimiter() {
+        return followLimiter;
+    }
+
+    /**
+     * @return the Euler-tour index used for subtree membership and sums
+     */
+    public SubtreeIndex getSubtreeIndex() {
+        return subtreeIndex;
+    }
+
+    /**
+     * @return the off-heap storage holding the text of every tweet in this tree
+     */
+    public TweetArena getTweetArena() {
+        return tweetArena;
+    }
+
+    /**
+     * @return the full text index of every tweet posted in this tree
+     */
+    public TweetIndex getTweetIndex() {
+        return tweetIndex;
+    }
+
+    /**
+     * Method to gather JTree for rendering in the UI. The JTree is created on
+     * first use so a UserTree can be used without any UI.
      * 
      * @return UserTree.tree
      */
     public JTree getJTree() {
+        if (tree == null) {
+            tree = new JTree(model);
+        }
         return tree;
     }
 
+    /**
+     * @return the TreeModel backing UserTree.tree
+     */
+    public UserTreeModel getModel() {
+        return model;
+    }
+
     /**
      * @return UserTree.root
      */
-    public DefaultMutableTreeNode getRoot() {
+    public UserGroup getRoot() {
         return root;
     }
 
     /**
-     * Helper function for visitor pattern to return a list of all nodes in UserTree
+     * Takes a point-in-time snapshot of the tree. Passing the version to
+     * stream(), traverse() or a visitor reads the tree exactly as it was, while
+     * users, groups and tweets keep being added without waiting on the reader.
      * 
-     * @return: LinkedList of all entries in tree
+     * @return: version identifying the current state of the tree
      */
-    private LinkedList<SysEntry> getAllEntries() {
-        return mapTree(root, new LinkedList<SysEntry>());
+    public long snapshot() {
+        return root.getClock().current();
     }
 
     /**
-     * Helper function for visitor pattern to return a list of all nodes in UserTree
+     * @return number of mutations finished in this tree, unchanged means
+     *         anything computed from the tree is still current
+     */
+    public long getEpoch() {
+        return root.getClock().epoch();
+    }
+
+    /**
+     * Returns the cache shared by every caller asking for the same kind of
+     * statistic, so each admin panel or client does not traverse on its own.
      * 
-     * @param root:      root of tree to traverse down from
-     * @param listSoFar: LinkedList to accumulate entries to
-     * @return LinkedList of all entries in tree
-     */
-    private LinkedList<SysEntry> mapTree(DefaultMutableTreeNode root, LinkedList<SysEntry> listSoFar) {
-        listSoFar.add((SysEntry) root.getUserObject());
-        int numChildren = root.getChildCount();
-        for (int i = 0; i < numChildren; i++) {
-            listSoFar = mapTree((DefaultMutableTreeNode) root.getChildAt(i), listSoFar);
+     * @param stat: statistic to cache, used only for the first request of its
+     *              class
+     * @return cached statistic of the same class as stat
+     */
+    public synchronized StatType cached(StatType stat) {
+        CachedStat cache = statCache.get(stat.getClass());
+        if (cache == null) {
+            cache = new CachedStat(stat, this);
+            statCache.put(stat.getClass(), cache);
         }
-        return listSoFar;
+        return cache;
     }
 
     /**
-     * Finds a given user in the tree. Utilizes depth-first-search
+     * Helper function for visitor pattern to walk all nodes in UserTree without
+     * copying them into a list. Stops early if the stream is short-circuited.
      * 
-     * @param name: name to find in this UserTree
-     * @return: node containing target user or null if user is not in tree
+     * @return: Stream of all entries in tree, depth first
      */
-    public DefaultMutableTreeNode findUser(String name) {
-        return DFS(root, name);
+    public Stream<SysEntry> stream() {
+        return stream(snapshot());
     }
 
     /**
-     * Depth-First-Search to find node corresponding to a given user name, utility
-     * for findUser
+     * @param version: snapshot to read, see snapshot()
+     * @return: Stream of the entries in tree at version, depth first
+     */
+    public Stream<SysEntry> stream(long version) {
+        return StreamSupport.stream(new TreeSpliterator(root, version), false);
+    }
+
+    /**
+     * @return: parallel Stream of all entries in tree, split by subtree
+     */
+    public Stream<SysEntry> parallelStream() {
+        return parallelStream(snapshot());
+    }
+
+    /**
+     * @param version: snapshot to read, see snapshot()
+     * @return: parallel Stream of the entries in tree at version
+     */
+    public Stream<SysEntry> parallelStream(long version) {
+        return StreamSupport.stream(new TreeSpliterator(root, version), true);
+    }
+
+    /**
+     * Finds a given user in the tree using the name registry
      * 
-     * @param root: root of tree to traverse down from
-     * @param name: name to search for
-     * @return: node containing target user or null if user is not in tree
+     * @param name: name to find in this UserTree
+     * @return: target user or null if user is not in tree
      */
-    private DefaultMutableTreeNode DFS(DefaultMutableTreeNode root, String name) {
-        if (root.toString().equals(name)) {
-            return root;
-        }
-        int numChildren = root.getChildCount();
-        for (int i = 0; i < numChildren; i++) {
-            DefaultMutableTreeNode childResult = DFS((DefaultMutableTreeNode) root.getChildAt(i), name);
-            if (childResult != null) {
-                return childResult;
-            }
+    public User findUser(String name) {
+        SysEntry result = names.get(name);
+        if (result instanceof User) {
+            return (User) result;
         }
         return null;
     }
 
     /**
-     * Method to use visitor pattern to determine total number of users
+     * Visits every entry in the tree in depth first order, stopping as soon as
+     * the visitor asks to
      * 
-     * @return number of users in UserTree
+     * @param visitor: visitor to run
+     * @return the visitor's result
      */
-    public int getNumUsers() {
-        int count = 0;
-        LinkedList<SysEntry> allEntries = getAllEntries();
-        ListIterator<SysEntry> i = allEntries.listIterator();
-        while (i.hasNext()) {
-            count += i.next().accept(new NumUsersVisitor());
+    public <R> R traverse(SysEntryVisitor<R> visitor) {
+        return traverse(visitor, snapshot());
+    }
+
+    /**
+     * Visits every entry that was in the tree at version, in depth first order
+     * 
+     * @param visitor: visitor to run
+     * @param version: snapshot to read, see snapshot()
+     * @return the visitor's result
+     */
+    public <R> R traverse(SysEntryVisitor<R> visitor, long version) {
+        return traverse(visitor, root, version);
+    }
+
+    /**
+     * Visits every entry that was under scope at version, scope included, in
+     * depth first order
+     * 
+     * @param visitor: visitor to run
+     * @param scope:   group to start from
+     * @param version: snapshot to read, see snapshot()
+     * @return the visitor's result
+     */
+    public <R> R traverse(SysEntryVisitor<R> visitor, UserGroup scope, long version) {
+        Iterator<SysEntry> i = Spliterators.iterator(new TreeSpliterator(scope, version));
+        while (i.hasNext() && i.next().accept(visitor)) {
+            // visitor accumulates its own result
         }
-        return count;
+        return visitor.getResult();
     }
 
     /**
-     * Method to use visitor pattern to determine total number of groups
+     * Visits every entry in the tree in parallel, giving each part of the tree
+     * its own fork of visitor and merging the forks at the end. A fork asking to
+     * stop does not stop the others, so this is meant for visitors that always
+     * visit everything.
+     * 
+     * @param visitor: visitor to run, receives the merged results
+     * @return the visitor's result
+     */
+    public <R> R traverseParallel(SysEntryVisitor<R> visitor) {
+        return traverseParallel(visitor, snapshot());
+    }
+
+    /**
+     * Parallel traversal of the entries that were in the tree at version
+     * 
+     * @param visitor: visitor to run, receives the merged results
+     * @param version: snapshot to read, see snapshot()
+     * @return the visitor's result
+     */
+    public <R> R traverseParallel(SysEntryVisitor<R> visitor, long version) {
+        return traverseParallel(visitor, root, version);
+    }
+
+    /**
+     * Parallel traversal of the entries that were under scope at version, scope
+     * included
+     * 
+     * @param visitor: visitor to run, receives the merged results
+     * @param scope:   group to start from
+     * @param version: snapshot to read, see snapshot()
+     * @return the visitor's result
+     */
+    public <R> R traverseParallel(SysEntryVisitor<R> visitor, UserGroup scope, long version) {
+        Stream<SysEntry> entries = StreamSupport.stream(new TreeSpliterator(scope, version), true);
+        SysEntryVisitor<R> forks = entries.collect(visitor::fork,
+                (fork, entry) -> entry.accept(fork), SysEntryVisitor::merge);
+        visitor.merge(forks);
+        return visitor.getResult();
+    }
+
+    /**
+     * Method to use visitor pattern to determine total number of users, split
+     * over the subtrees of the tree and counted in parallel
+     * 
+     * @return number of users in UserTree
+     */
+    public long getNumUsers() {
+        return traverseParallel(new NumUsersVisitor());
+    }
+
+    /**
+     * Method to use visitor pattern to determine total number of groups, split
+     * over the subtrees of the tree and counted in parallel
      * 
      * @return number of groups in UserTree
      */
-    public int getNumGroups() {
-        int count = 0;
-        LinkedList<SysEntry> allEntries = getAllEntries();
-        ListIterator<SysEntry> i = allEntries.listIterator();
-        while (i.hasNext()) {
-            count += i.next().accept(new NumGroupsVisitor());
-        }
-        return count;
+    public long getNumGroups() {
+        return traverseParallel(new NumGroupsVisitor());
     }
 
     /**
-     * Method to use visitor pattern to determine total number of tweets
+     * Reads the running total kept by the root group, which deleting a tweet
+     * updates directly, so no traversal is needed. Traverse with a
+     * NumTweetsVisitor to count from a snapshot instead.
      * 
-     * @return number of tweets for all users in UserTree
-     */
-    public int getNumTweets() {
-        int count = 0;
-        LinkedList<SysEntry> allEntries = getAllEntries();
-        ListIterator<SysEntry> i = allEntries.listIterator();
-        while (i.hasNext()) {
-            count += i.next().accept(new NumTweetsVisitor());
-        }
-        return count;
+     * @return number of tweets for all users in UserTree, not counting deleted
+     *         ones
+     */
+    public long getNumTweets() {
+        return root.getNumTweets();
     }
 
     /**
-     * Method to use visitor pattern to determine positive percentage of tweets
+     * Reads the running totals kept by the root group, which deleting a tweet
+     * updates directly, so no traversal is needed. Traverse with a PairVisitor
+     * of NumPosTweetsVisitor and NumTweetsVisitor to count from a snapshot
+     * instead.
      * 
      * @return integer percentage (0-100)% of tweets in UserTree that meet positive
-     *         criteria
+     *         criteria, not counting deleted ones
      */
     public int percentGoodTweets() {
-        int goodTweets = 0;
-        LinkedList<SysEntry> allEntries = getAllEntries();
-        ListIterator<SysEntry> i = allEntries.listIterator();
-        while (i.hasNext()) {
-            goodTweets += i.next().accept(new NumPosTweetsVisitor());
+        long goodTweets;
+        long totalTweets;
+        // read both under the root's lock so they come from the same moment
+        synchronized (root) {
+            goodTweets = root.getNumPosTweets();
+            totalTweets = root.getNumTweets();
         }
-
-        int totalTweets = getNumTweets();
         if (totalTweets != 0) {
             double percent = (double) goodTweets / (double) totalTweets;
             int intVal = (int) (percent * 100);
@@ -169,57 +504,180 @@ public class UserTree {
     }
 
     /**
-     * Method to use visitor pattern to determine if all names are valid
+     * Ranks entries by estimated retained memory, kept current as users post,
+     * follow and receive tweets, so the report costs one pass over the counters
+     * and no heap walk
+     * 
+     * @param k:      number of entries to return
+     * @param scope:  group whose subtree should be searched
+     * @param groups: true for the largest groups under scope, false for the
+     *                largest users
+     * @return up to k entries, largest first
+     */
+    public List<SysEntry> largestConsumers(int k, UserGroup scope, boolean groups) {
+        return traverseParallel(new LargestConsumersVisitor(k, groups, scope), scope, snapshot());
+    }
+
+    /**
+     * Determines if all names are valid. Ids are checked as they are registered,
+     * so this is an O(1) query.
      * 
      * @return true if all names are valid, false otherwise
      */
     public boolean validateNames() {
-        LinkedList<SysEntry> allEntries = getAllEntries();
-        ListIterator<SysEntry> i = allEntries.listIterator();
-        while (i.hasNext()) {
-            if (i.next().accept(new NameValidatorVisitor()) == 0) {
+        return validateNames(false);
+    }
+
+    /**
+     * @param fullAudit: if true, also re-check every entry in the tree with the
+     *                   visitor pattern rather than trusting the registry
+     * @return true if all names are valid, false otherwise
+     */
+    public boolean validateNames(boolean fullAudit) {
+        if (!names.allValid()) {
+            return false;
+        }
+        if (fullAudit) {
+            // entries are added to the tree and registered under this lock, so
+            // the registry size matches the tree at this version
+            long version;
+            int registered;
+            synchronized (names) {
+                version = snapshot();
+                registered = names.size();
+            }
+            // stops at the first invalid entry
+            NameValidatorVisitor validator = new NameValidatorVisitor();
+            if (!traverse(validator, version)) {
                 return false;
             }
+            // every entry in the tree must also be the one registered under its id
+            return validator.numNames() == registered
+                    && stream(version).allMatch(entry -> names.get(entry.toString()) == entry);
         }
         return true;
     }
 
     /**
-     * Method to use visitor pattern to determine the most recent user to post a
-     * tweet
+     * Determines the most recent user to post a tweet using the root group's
+     * ActivityIndex
      * 
      * @return the userID of the most recent user to post
      */
     public String mostRecent() {
-        String result = "null";
-        LinkedList<SysEntry> allEntries = getAllEntries();
-        ListIterator<SysEntry> i = allEntries.listIterator();
-        while (i.hasNext()) {
-            SysEntry next = i.next();
-            if (next.accept(new mostRecentVisitor()) == 1) {
-                result = next.toString();
-            }
+        User result = root.getActivity().mostRecent();
+        if (result == null) {
+            return "null";
         }
-        return result;
+        return result.toString();
+    }
+
+    /**
+     * @param k: number of users to return, at most the activity capacity of
+     *           the tree (ActivityIndex.DEFAULT_CAPACITY unless chosen with
+     *           withActivityCapacity())
+     * @return up to k of the most recently active users in the whole tree, most
+     *         recent first
+     */
+    public List<User> mostRecent(int k) {
+        return mostRecent(k, root);
+    }
+
+    /**
+     * @param k:     number of users to return, at most the activity capacity of
+     *               the tree
+     * @param group: group whose subtree should be searched
+     * @return up to k of the most recently active users under group, most
+     *         recent first
+     */
+    public List<User> mostRecent(int k, UserGroup group) {
+        return group.getActivity().topK(k);
     }
 
     /**
      * @param user: a String to be tested for existence
-     * @return: true if user corresponds to a valid name in listNames
+     * @return: true if user corresponds to an existing User
      *          false if user can be added
      */
     public boolean validateUser(String user) {
-        return listNames.contains(user);
+        return names.get(user) instanceof User;
+    }
+
+    /**
+     * Makes follower follow the user with the given id, subscribing it to that
+     * user's tweets and pulling that user's latest BACKFILL tweets into the
+     * follower's feed
+     * 
+     * @param follower:   the User wanting to follow
+     * @param followeeId: id of the user to follow
+     * @return true if followeeId is a user that follower was not already
+     *         following, false otherwise or if the follow limiter rejected it
+     */
+    public boolean follow(User follower, String followeeId) {
+        User followee = subscribe(follower, followeeId);
+        if (followee == null) {
+            return false;
+        }
+        follower.getFeed().backfill(Collections.singletonList(followee), BACKFILL);
+        return true;
+    }
+
+    /**
+     * Bulk version of follow(). The latest tweets of every newly followed user
+     * are merged into the follower's feed in a single pass.
+     * 
+     * @param follower:    the User wanting to follow
+     * @param followeeIds: ids of the users to follow
+     * @return ids that were followed, leaving out unknown users, users already
+     *         followed and follows rejected by the follow limiter
+     */
+    public List<String> followAll(User follower, List<String> followeeIds) {
+        ArrayList<User> followed = new ArrayList<User>();
+        ArrayList<String> result = new ArrayList<String>();
+        for (String id : followeeIds) {
+            User followee = subscribe(follower, id);
+            if (followee != null) {
+                followed.add(followee);
+                result.add(id);
+            }
+        }
+        follower.getFeed().backfill(followed, BACKFILL);
+        return result;
+    }
+
+    /**
+     * Adds the follow and notifies all listeners. A follower built outside
+     * this tree has no rate limiter bucket and is turned away.
+     * 
+     * @return the followed User, or null if the follow did not happen
+     */
+    private User subscribe(User follower, String followeeId) {
+        User followee = findUser(followeeId);
+        if (followee == null || follower.getIndex() < 0 || follower.isFollowing(followeeId)
+                || !followLimiter.tryAcquire(follower.getIndex()) || !follower.follow(followeeId)) {
+            if (Log.isEnabled(Log.Level.DEBUG)) {
+                Log.debug("follow.rejected", "follower", follower, "followee", followeeId);
+            }
+            return null;
+        }
+        followee.attach(follower);
+        root.getClock().touch();
+        for (TreeListener listener : listeners) {
+            listener.followed(follower, followee);
+        }
+        if (Log.isEnabled(Log.Level.DEBUG)) {
+            Log.debug("user.followed", "follower", follower, "followee", followee);
+        }
+        return followee;
     }
 
     /**
      * Overloaded addUser method to assume root parent
      * 
-     * @param name:   String identifier for the User.userId
-     * @param parent: DefaultMutableTreeNode containing a UserGroup
-     * @return Newly created DefaultMutableTreeNode if name is unique, else: null
+     * @param name: String identifier for the User.userId
+     * @return Newly created User if name is unique, else: null
      */
-    public DefaultMutableTreeNode addUser(String name) {
+    public User addUser(String name) {
         return addUser(name, root);
     }
 
@@ -227,57 +685,56 @@ public class UserTree {
      * Add a user to the tree
      * 
      * @param name:   String identifier for the User.userId
-     * @param parent: DefaultMutableTreeNode containing a UserGroup
-     * @return Newly created DefaultMutableTreeNode if name is unique, else: null
-     */
-    public DefaultMutableTreeNode addUser(String name, DefaultMutableTreeNode parent) {
-        if (!listNames.contains(name)) { // check to see if name is already used
-            DefaultMutableTreeNode newUser = new DefaultMutableTreeNode(new User(name,
-                    (UserGroup) parent.getUserObject()));
-            parent.add(newUser);
-            listNames.add(name);
-            return newUser;
+     * @param parent: UserGroup to add the User to
+     * @return Newly created User if name is unique, else: null
+     */
+    public User addUser(String name, UserGroup parent) {
+        User newUser;
+        // the check and the registration happen as one, so two callers racing
+        // for a name cannot both create an entry
+        synchronized (names) {
+            if (names.contains(name)) {
+                return null; // name already exists
+            }
+            newUser = new User(name, parent, this);
+            names.register(name, newUser);
         }
-        // name already exists
-        return null;
+        model.fireNodeInserted(parent, newUser);
+        fireEntryAdded(newUser);
+        Log.info("user.added", "user", name, "group", parent);
+        return newUser;
     }
 
     /**
-     * Overloaded addGroup() method to create root/assume root node as parent
+     * Overloaded addGroup() method to assume root node as parent
      * 
-     * @param name:   String identifier for the UserGroup.groupId
-     * @param parent: DefaultMutableTreeNode containing a UserGroup
-     * @return Newly created DefaultMutableTreeNode if name is unique, else: null
-     */
-    public DefaultMutableTreeNode addGroup(String name) {
-        // if no nodes have been made yet, create a root node
-        if (listGroups.size() == 0) {
-            DefaultMutableTreeNode rootNode = new DefaultMutableTreeNode(new UserGroup(name));
-            listGroups.add(name);
-            return rootNode;
-            // else assume root directory
-        } else {
-            return addGroup(name, root);
-        }
+     * @param name: String identifier for the UserGroup.groupId
+     * @return Newly created UserGroup if name is unique, else: null
+     */
+    public UserGroup addGroup(String name) {
+        return addGroup(name, root);
     }
 
     /**
      * Add a group to the tree
      * 
      * @param name:   String identifier for the UserGroup.groupId
-     * @param parent: DefaultMutableTreeNode containing a UserGroup
-     * @return Newly created DefaultMutableTreeNode if name is unique, else: null
-     */
-    public DefaultMutableTreeNode addGroup(String name, DefaultMutableTreeNode parent) {
-        if (!listGroups.contains(name)) {
-            DefaultMutableTreeNode newGroup = new DefaultMutableTreeNode(new UserGroup(name,
-                    (UserGroup) parent.getUserObject()));
-            parent.add(newGroup);
-            listGroups.add(name);
-            return newGroup;
+     * @param parent: UserGroup to add the new group to
+     * @return Newly created UserGroup if name is unique, else: null
+     */
+    public UserGroup addGroup(String name, UserGroup parent) {
+        UserGroup newGroup;
+        synchronized (names) {
+            if (names.contains(name)) {
+                return null; // name already exists
+            }
+            newGroup = new UserGroup(name, parent);
+            names.register(name, newGroup);
         }
-        // name already exists
-        return null;
+        model.fireNodeInserted(parent, newGroup);
+        fireEntryAdded(newGroup);
+        Log.info("group.added", "group", name, "parent", parent);
+        return newGroup;
     }
 
     /**
@@ -290,8 +747,8 @@ public class UserTree {
         addUser("Karen");
         addUser("Rick");
         addUser("Kathleen");
-        DefaultMutableTreeNode huber = addGroup("Huber");
-        DefaultMutableTreeNode allison = addGroup("Allison");
+        UserGroup huber = addGroup("Huber");
+        UserGroup allison = addGroup("Allison");
         addUser("Liam", huber);
         addUser("Alita", huber);
         addUser("David", allison);
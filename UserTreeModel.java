@@ -0,0 +1,115 @@
+
+/**
+ * @author Kevin Wong
+ * TreeModel that sits directly on the UserGroup composite. The JTree only asks
+ * for the children of nodes it is actually displaying, so collapsed groups are
+ * never loaded, and additions are announced with a single treeNodesInserted
+ * event instead of reloading the whole tree.
+ */
+import java.util.ArrayList;
+
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+public class UserTreeModel implements TreeModel {
+    private UserGroup root;
+    private EventListenerList listeners = new EventListenerList();
+
+    /**
+     * Constructor
+     *
+     * @param root: the root group of the composite to display
+     */
+    public UserTreeModel(UserGroup root) {
+        this.root = root;
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        return ((UserGroup) parent).getChildAt(index);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        if (parent instanceof UserGroup) {
+            return ((UserGroup) parent).getChildCount();
+        }
+        return 0;
+    }
+
+    /**
+     * @return true for Users, groups are never displayed as leaves
+     */
+    @Override
+    public boolean isLeaf(Object node) {
+        return node instanceof User;
+    }
+
+    /**
+     * Names of entries never change and the JTree is not editable, so there is
+     * nothing to apply
+     */
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        if (parent instanceof UserGroup && child instanceof SysEntry) {
+            return ((UserGroup) parent).getIndexOfChild((SysEntry) child);
+        }
+        return -1;
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener l) {
+        listeners.add(TreeModelListener.class, l);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener l) {
+        listeners.remove(TreeModelListener.class, l);
+    }
+
+    /**
+     * Notifies the JTree that child was appended to parent. Costs O(depth) to
+     * build the path to parent, independent of the size of the tree.
+     *
+     * @param parent: group the child was added to
+     * @param child:  the newly added User or UserGroup
+     */
+    public void fireNodeInserted(UserGroup parent, SysEntry child) {
+        Object[] list = listeners.getListenerList();
+        if (list.length == 0) {
+            return;
+        }
+        // children are only ever appended, so the new child is always last
+        int[] indices = { parent.getChildCount() - 1 };
+        TreeModelEvent e = new TreeModelEvent(this, pathTo(parent), indices, new Object[] { child });
+        for (int i = list.length - 2; i >= 0; i -= 2) {
+            if (list[i] == TreeModelListener.class) {
+                ((TreeModelListener) list[i + 1]).treeNodesInserted(e);
+            }
+        }
+    }
+
+    /**
+     * @param group: any group in this model
+     * @return the path from the root down to group
+     */
+    public TreePath pathTo(UserGroup group) {
+        ArrayList<Object> path = new ArrayList<Object>();
+        for (UserGroup g = group; g != null; g = g.getParent()) {
+            path.add(0, g);
+        }
+        return new TreePath(path.toArray());
+    }
+}
\ No newline at end of file
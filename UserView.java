@@ -6,29 +6,27 @@
  */
 
 import javax.swing.*;
-import javax.swing.tree.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
 
 public class UserView {
-    private DefaultMutableTreeNode userNode;
     private User user;
     private UserTree data;
-    private DefaultListModel<String> feedModel;
 
     /**
      * UserView Constructor
      * 
-     * @param subject:  the tree node corresponding to a user. This node MUST hold a
-     *                  User object
-     * @param fullData: a reference to the tree to which the node belongs, used for
+     * @param subject:  the user this view belongs to
+     * @param fullData: a reference to the tree to which the user belongs, used for
      *                  traversal
      */
-    public UserView(DefaultMutableTreeNode subject, UserTree fullData) {
+    public UserView(User subject, UserTree fullData) {
         data = fullData;
-        userNode = subject;
-        user = (User) userNode.getUserObject();
-        user.setUserView(this);
+        user = subject;
         launchPanel();
     }
 
@@ -40,7 +38,8 @@ public class UserView {
         // create new frame
         JFrame userFrame = new JFrame("User View: " + user);
         userFrame.setResizable(false);
-        userFrame.setBounds(100, 100, 362, 500);
+        userFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        userFrame.setBounds(100, 100, 362, 530);
         userFrame.setLayout(null);
 
         // set up message center
@@ -82,13 +81,45 @@ public class UserView {
                     messageCenter.setText("Please enter a user to follow.");
                     return;
                 }
+                // several users separated by commas are followed in one go
+                if (followCandidate.contains(",")) {
+                    List<String> ids = new ArrayList<String>();
+                    for (String id : followCandidate.split(",")) {
+                        if (!id.trim().equals("")) {
+                            ids.add(id.trim());
+                        }
+                    }
+                    List<String> followed = data.followAll(user, ids);
+                    for (String id : followed) {
+                        model.addElement(id);
+                    }
+                    // real users not followed before or now were held back by
+                    // the follow limiter
+                    List<String> throttled = new ArrayList<String>();
+                    for (String id : ids) {
+                        if (!followed.contains(id) && data.validateUser(id) && !user.isFollowing(id)) {
+                            throttled.add(id);
+                        }
+                    }
+                    String message = "Followed " + followed.size() + " of " + ids.size() + " users.";
+                    if (!throttled.isEmpty()) {
+                        message += "\nYou are following users too quickly, not followed: " + throttled
+                                + "\nPlease wait a moment.";
+                    }
+                    messageCenter.setText(message);
+                    // left in the field so they can be tried again
+                    userArea.setText(String.join(",", throttled));
+                    return;
+                }
                 if (data.validateUser(followCandidate)) { // user exists
-                    if (user.follow(followCandidate)) { // successfully added
+                    if (user.isFollowing(followCandidate)) {
+                        messageCenter.setText("You are already following " + followCandidate + ".");
+                    } else if (data.follow(user, followCandidate)) { // successfully added
                         messageCenter.setText("Successfully followed " + followCandidate + ".");
                         model.addElement(followCandidate);
-                        ((User) data.findUser(followCandidate).getUserObject()).attach(user);
-                    } else { // already following candidate
-                        messageCenter.setText("You are already following " + followCandidate + ".");
+                    } else { // rejected by the follow limiter
+                        messageCenter.setText("You are following users too quickly.\nPlease wait a moment.");
+                        return;
                     }
                 } else {
                     messageCenter.setText(followCandidate + " does not refer to a real user.");
@@ -98,9 +129,29 @@ public class UserView {
         });
         userFrame.add(followUser);
 
-        // set up feed view
-        feedModel = new DefaultListModel<String>();
-        JList<String> feedList = new JList<String>(feedModel);
+        // set up follow suggestions
+        JButton suggest = new JButton("Who to Follow");
+        suggest.setBounds(10, 463, 150, 23);
+        suggest.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                List<User> suggestions = data.getRecommender().recommend(user, 5);
+                if (suggestions.isEmpty()) {
+                    messageCenter.setText("No suggestions yet, try following more users.");
+                } else {
+                    messageCenter.setText("You might like to follow:\n" + suggestions);
+                }
+            }
+        });
+        userFrame.add(suggest);
+
+        // set up feed view, shared with any other window open on this user
+        JList<String> feedList = new JList<String>();
+        user.getFeed().attach(feedList);
+        userFrame.addWindowListener(new WindowAdapter() {
+            public void windowClosed(WindowEvent e) {
+                user.getFeed().detach(feedList);
+            }
+        });
         JScrollPane feedView = new JScrollPane(feedList);
         feedView.setBounds(10, 283, 331, 103);
         feedView.setViewportView(feedList);
@@ -129,8 +180,12 @@ public class UserView {
                     messageCenter.setText("Enter text in order to post a tweet.");
                     return;
                 }
-                user.postTweet(tweetCandidate);
-                user.notifyObservers(tweetCandidate);
+                long id = user.postTweet(tweetCandidate);
+                if (id < 0) { // rejected by the post limiter
+                    messageCenter.setText("You are posting too quickly.\nPlease wait a moment.");
+                    return;
+                }
+                user.notifyObservers(id, tweetCandidate);
                 long creationTime = user.getCreationTime();
                 long lastTweetTime = user.getLastUpdated();
                 messageCenter.setText("Successfully posted tweet!\n" + "Creation time of this user: " + creationTime
@@ -141,18 +196,30 @@ public class UserView {
         });
         userFrame.add(postTweet);
 
+        // deletes the newest tweet still up, followers' feeds drop it too
+        JButton deleteTweet = new JButton("Delete Last Tweet");
+        deleteTweet.setBounds(10, 249, 150, 23);
+        deleteTweet.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                int i = user.numTweets() - 1;
+                while (i >= 0 && user.isDeleted(i)) {
+                    i--;
+                }
+                if (i < 0) {
+                    messageCenter.setText("You have no tweets to delete.");
+                    return;
+                }
+                String tweet = user.getTweet(i);
+                if (user.deleteTweet(user.getTweetId(i))) {
+                    messageCenter.setText("Deleted tweet:\n" + tweet);
+                } else { // deleted meanwhile from another window
+                    messageCenter.setText("That tweet was already deleted.");
+                }
+            }
+        });
+        userFrame.add(deleteTweet);
+
         // set frame to visible
         userFrame.setVisible(true);
     }
-
-    /**
-     * Helper function for posting tweets. Users keep a reference to their
-     * UserView so this method can be called by a user.
-     * 
-     * @param userId: the user that posted the message
-     * @param tweet:  the message to be posted to the feed
-     */
-    public void addToFeed(String userId, String tweet) {
-        feedModel.add(0, " - " + userId + ": " + tweet);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+
+/**
+ * @author Kevin Wong
+ * Version counter shared by every entry in a UserTree. Each append to a group's
+ * children or a user's tweets, and each deletion of a tweet, is stamped with
+ * the next version, so the state of the tree at any version can be read back
+ * later: anything stamped after it is ignored. Readers take a version and then run without locks while writers
+ * keep appending.
+ *
+ * Writers must hold the clock's monitor from advance() until the stamped
+ * element is published, so a reader can never see version v before every
+ * element stamped at or below v is visible.
+ *
+ * The clock also keeps an epoch, touched once a mutation has finished,
+ * including the totals it updates outside the lock, and by mutations that
+ * append nothing such as follows and deletes. Anything derived from the tree
+ * stays valid while the epoch is unchanged, see CachedStat.
+ */
+public class VersionClock {
+    private long version = 0;
+    private long epoch = 0;
+
+    /**
+     * @return the latest version, usable as a point-in-time snapshot
+     */
+    public synchronized long current() {
+        return version;
+    }
+
+    /**
+     * @return a new version for an element about to be appended
+     */
+    public synchronized long advance() {
+        return ++version;
+    }
+
+    /**
+     * Marks the end of a mutation, call after all of its effects are visible
+     */
+    public synchronized void touch() {
+        epoch++;
+    }
+
+    /**
+     * @return number of mutations finished so far
+     */
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * @param versions: ascending versions of an append-only array
+     * @param size:     number of published elements in the array
+     * @param snapshot: version to read at
+     * @return number of leading elements stamped at or before snapshot
+     */
+    public static int countAt(long[] versions, int size, long snapshot) {
+        if (size == 0 || versions[size - 1] <= snapshot) {
+            return size;
+        }
+        int low = 0, high = size - 1;
+        // first index with a version after the snapshot
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (versions[mid] <= snapshot) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
\ No newline at end of file
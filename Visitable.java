@@ -5,5 +5,8 @@
  *         implement this.
  */
 public interface Visitable {
-    int accept(SysEntryVisitor visitor);
+    /**
+     * @return false if the visitor asked to stop the traversal
+     */
+    <R> boolean accept(SysEntryVisitor<R> visitor);
 }
\ No newline at end of file